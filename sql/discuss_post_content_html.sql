@@ -0,0 +1,9 @@
+-- 帖子正文渲染后的 HTML
+-- 原来详情页输出 Markdown 原文，由浏览器中的 editor.md 渲染。现在发帖时在服务端渲染一次，与原文一起保存，详情页直接输出。
+-- 已有的帖子不需要回填：content_html 为 null 时，第一次查看帖子会渲染并保存。
+
+alter table discuss_post
+    add column content_html mediumtext null comment '正文渲染后的 HTML' after content;
+
+-- 修改渲染规则后（如支持表情、收紧链接地址的检查），清空已渲染的 HTML，帖子会在下次查看时重新渲染：
+-- update discuss_post set content_html = null;
@@ -0,0 +1,81 @@
+-- 系统通知归档与分区
+-- message 表中的私信和系统通知会一直累积，为了让热数据能留在 buffer pool 中：
+-- 1、MessageArchiveJob 每天将已读且超过 community.message.archive.days 天的系统通知移动到 message_archive
+-- 2、message 表按 create_time 按月分区，归档时按 create_time 裁剪分区，历史分区可以直接 drop / 迁移
+-- 分区由运维提前创建（本脚本 + 第 3 步的定时任务），应用账号不需要 DDL 权限，也不会在运行时锁表
+
+-- 1、归档表（冷数据），结构与 message 相同
+create table if not exists message_archive like message;
+
+-- 2、按月分区（分区键必须包含在主键中，因此主键改为 (id, create_time)）
+alter table message
+    drop primary key,
+    add primary key (id, create_time);
+
+-- create_time 是 TIMESTAMP 类型，range columns 不支持 TIMESTAMP，使用 range (unix_timestamp(create_time))
+-- 上界按执行脚本时会话的时区计算，请在与应用相同的时区（UTC+8）下执行
+-- p_history 保存上线之前的所有数据；之后每个月一个分区，提前创建到 2022-12
+-- p_max 只是兜底，按第 3 步提前拆分时始终为空，拆分一个空分区只修改元数据，很快完成
+alter table message
+    partition by range (unix_timestamp(create_time)) (
+        partition p_history values less than (unix_timestamp('2021-10-01 00:00:00')),
+        partition p202110 values less than (unix_timestamp('2021-11-01 00:00:00')),
+        partition p202111 values less than (unix_timestamp('2021-12-01 00:00:00')),
+        partition p202112 values less than (unix_timestamp('2022-01-01 00:00:00')),
+        partition p202201 values less than (unix_timestamp('2022-02-01 00:00:00')),
+        partition p202202 values less than (unix_timestamp('2022-03-01 00:00:00')),
+        partition p202203 values less than (unix_timestamp('2022-04-01 00:00:00')),
+        partition p202204 values less than (unix_timestamp('2022-05-01 00:00:00')),
+        partition p202205 values less than (unix_timestamp('2022-06-01 00:00:00')),
+        partition p202206 values less than (unix_timestamp('2022-07-01 00:00:00')),
+        partition p202207 values less than (unix_timestamp('2022-08-01 00:00:00')),
+        partition p202208 values less than (unix_timestamp('2022-09-01 00:00:00')),
+        partition p202209 values less than (unix_timestamp('2022-10-01 00:00:00')),
+        partition p202210 values less than (unix_timestamp('2022-11-01 00:00:00')),
+        partition p202211 values less than (unix_timestamp('2022-12-01 00:00:00')),
+        partition p202212 values less than (unix_timestamp('2023-01-01 00:00:00')),
+        partition p_max values less than (maxvalue)
+    );
+
+-- 3、运维定时任务：保证当前月之后至少还有 months_ahead 个月的分区（已存在的跳过）
+-- 使用有 DDL 权限的账号，在低峰期执行，例如每月一次：
+--     mysql -u <dba> community -e "call add_message_partitions(3)"
+-- 也可以用 MySQL 的事件调度（需要开启 event_scheduler）：
+--     create event if not exists message_partition_maintenance
+--         on schedule every 1 month starts '2021-10-20 04:00:00'
+--         do call add_message_partitions(3);
+drop procedure if exists add_message_partitions;
+
+delimiter $$
+create procedure add_message_partitions(in months_ahead int)
+begin
+    declare max_bound bigint;
+    declare next_month date;
+    declare last_month date;
+
+    -- 现有分区（除 p_max）的最大上界，只能在它之后拆分
+    select max(cast(partition_description as unsigned)) into max_bound
+    from information_schema.partitions
+    where table_schema = database()
+    and table_name = 'message'
+    and partition_name is not null
+    and partition_description <> 'MAXVALUE';
+
+    set next_month = date(from_unixtime(max_bound));
+    set last_month = date_add(date_format(curdate(), '%Y-%m-01'), interval months_ahead month);
+
+    while next_month <= last_month do
+        set @ddl = concat(
+            'alter table message reorganize partition p_max into (',
+            'partition p', date_format(next_month, '%Y%m'),
+            ' values less than (', unix_timestamp(date_add(next_month, interval 1 month)), '), ',
+            'partition p_max values less than (maxvalue))');
+        prepare stmt from @ddl;
+        execute stmt;
+        deallocate prepare stmt;
+        set next_month = date_add(next_month, interval 1 month);
+    end while;
+end$$
+delimiter ;
+
+call add_message_partitions(3);
@@ -0,0 +1,24 @@
+-- 系统通知结构化字段
+-- 原来系统通知的 userId / entityType / entityId / postId 以转义后的 JSON 字符串形式存放在 content 中，
+-- 渲染时需要反转义再解析。现在将它们拆成独立的列，并为已有的通知回填数据。
+
+-- 1、新增字段（私信的这些字段均为 0）
+alter table message
+    add column actor_id int not null default 0 comment '触发通知的用户 id',
+    add column entity_type int not null default 0 comment '通知对应的实体类型',
+    add column entity_id int not null default 0 comment '通知对应的实体 id',
+    add column post_id int not null default 0 comment '通知对应的帖子 id';
+
+-- 2、回填已有的系统通知（from_id = 1），content 中的引号被 HtmlUtils 转义成了 &quot;
+update message
+set actor_id = ifnull(json_unquote(json_extract(replace(content, '&quot;', '"'), '$.userId')), 0),
+    entity_type = ifnull(json_unquote(json_extract(replace(content, '&quot;', '"'), '$.entityType')), 0),
+    entity_id = ifnull(json_unquote(json_extract(replace(content, '&quot;', '"'), '$.entityId')), 0),
+    post_id = ifnull(json_unquote(json_extract(replace(content, '&quot;', '"'), '$.postId')), 0)
+where from_id = 1
+and json_valid(replace(content, '&quot;', '"'));
+
+-- 3、索引：按接收者和主题查询通知，按实体查询通知
+alter table message
+    add index idx_message_notice (to_id, conversation_id, status),
+    add index idx_message_entity (entity_type, entity_id);
@@ -0,0 +1,155 @@
+package com.ktf.community.util;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * 基准测试使用的文本和敏感词库
+ * 使用固定的随机数种子生成，每次运行的内容相同，结果可以互相比较
+ */
+public class BenchmarkCorpus {
+
+    // 中文正文使用的常用字（不包含 sensitive-words.txt 中的字）
+    private static final String CHINESE = "的一是在不了有和人这中大为上个国我以要他时来用们生到作地于出就分对成会可主发年动同工也能下过子说产种面而方后多定行学法所民得经十三之进着等部度家电力里如水化高自二理起小物现实加量都两体制机当使点从业本去把性好应开它合还因由其些然前外天政四日那社义事平形相全表间样与关各重新线内数正心反你明看原又么利比或但质气第向道命此变条只没结解问意建月公无系军很情者最立代想已通并提直题党程展五果料象员革位入常文总次品式活设及管特件长求老头基资边流路级少图山统接知较将组见计别她手角期根论运农指几九区强放决西被干做必战先回则任取据处理府研质";
+
+    private static final String CHINESE_PUNCTUATION = "，。！？、：；";
+
+    private static final String[] ENGLISH = {
+            "the", "spring", "boot", "redis", "kafka", "post", "comment", "reply", "user", "cache",
+            "thread", "request", "performance", "latency", "throughput", "benchmark", "query", "index",
+            "community", "message", "notice", "follow", "like", "search", "filter", "word", "is", "a",
+            "of", "and", "to", "in", "for", "with", "on", "this", "that", "it", "we", "you"
+    };
+
+    // 敏感词中混入的符号
+    private static final char[] SYMBOLS = {'☆', '*', ' ', '-', '@'};
+
+    private BenchmarkCorpus() {
+    }
+
+    /**
+     * sensitive-words.txt 中的敏感词
+     * @return
+     */
+    public static List<String> defaultDictionary() {
+        return new SensitiveFilter().readDefaultWords();
+    }
+
+    /**
+     * sensitive-words.txt 中的敏感词加上 size 个随机生成的 2~4 字的中文词
+     * 随机词使用的字与 CHINESE 不重叠，正文中只有插入的位置才会命中
+     * @param size
+     * @return
+     */
+    public static List<String> largeDictionary(int size) {
+        Random random = new Random(7);
+        Set<String> words = new HashSet<>(defaultDictionary());
+        while (words.size() < size) {
+            StringBuilder word = new StringBuilder();
+            int length = 2 + random.nextInt(3);
+            while (word.length() < length) {
+                char c = (char) (0x4E00 + random.nextInt(0x9FA5 - 0x4E00));
+                if (CHINESE.indexOf(c) < 0) {
+                    word.append(c);
+                }
+            }
+            words.add(word.toString());
+        }
+        return new ArrayList<>(words);
+    }
+
+    /**
+     * 生成文本
+     * @param language zh、en 或者 markdown
+     * @param length 文本长度（字符数）
+     * @param hitsPer1000 每 1000 个字符中插入的敏感词个数
+     * @param dictionary 插入的敏感词从中选取
+     * @return
+     */
+    public static String text(String language, int length, int hitsPer1000, List<String> dictionary) {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder(length + 64);
+        while (sb.length() < length) {
+            switch (language) {
+                case "zh":
+                    appendChinese(sb, random);
+                    break;
+                case "en":
+                    appendEnglish(sb, random);
+                    break;
+                case "markdown":
+                    appendMarkdown(sb, random);
+                    break;
+                default:
+                    throw new IllegalArgumentException("未知的语言: " + language);
+            }
+        }
+        sb.setLength(length);
+
+        // 在随机位置插入敏感词，一部分敏感词中混入符号
+        int hits = (int) ((long) length * hitsPer1000 / 1000);
+        for (int i = 0; i < hits; i++) {
+            String word = dictionary.get(random.nextInt(dictionary.size()));
+            if (random.nextInt(4) == 0) {
+                StringBuilder mixed = new StringBuilder();
+                for (int j = 0; j < word.length(); j++) {
+                    mixed.append(SYMBOLS[random.nextInt(SYMBOLS.length)]).append(word.charAt(j));
+                }
+                word = mixed.toString();
+            }
+            sb.insert(random.nextInt(sb.length()), word);
+        }
+        return sb.toString();
+    }
+
+    private static void appendChinese(StringBuilder sb, Random random) {
+        int length = 8 + random.nextInt(20);
+        for (int i = 0; i < length; i++) {
+            sb.append(CHINESE.charAt(random.nextInt(CHINESE.length())));
+        }
+        sb.append(CHINESE_PUNCTUATION.charAt(random.nextInt(CHINESE_PUNCTUATION.length())));
+    }
+
+    private static void appendEnglish(StringBuilder sb, Random random) {
+        int length = 5 + random.nextInt(12);
+        for (int i = 0; i < length; i++) {
+            sb.append(ENGLISH[random.nextInt(ENGLISH.length)]).append(' ');
+        }
+        sb.setCharAt(sb.length() - 1, '.');
+        sb.append(' ');
+    }
+
+    private static void appendMarkdown(StringBuilder sb, Random random) {
+        switch (random.nextInt(6)) {
+            case 0:
+                sb.append("## ");
+                appendChinese(sb, random);
+                break;
+            case 1:
+                sb.append("- ");
+                appendEnglish(sb, random);
+                break;
+            case 2:
+                sb.append("```java\nif (a < b && b > 0) {\n    map.put(\"key\", list.get(i));\n}\n```");
+                break;
+            case 3:
+                sb.append("[链接](https://example.com/discuss/detail/").append(random.nextInt(100000)).append(") ");
+                appendChinese(sb, random);
+                break;
+            case 4:
+                sb.append("**");
+                appendEnglish(sb, random);
+                sb.append("** ");
+                appendChinese(sb, random);
+                break;
+            default:
+                sb.append("> ");
+                appendChinese(sb, random);
+                break;
+        }
+        sb.append('\n');
+    }
+}
@@ -0,0 +1,94 @@
+package com.ktf.community.util;
+
+import com.ktf.community.entity.LoginTicket;
+import com.ktf.community.entity.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RedisTemplate 的 value 序列化：CompactRedisSerializer 与原来的 RedisSerializer.json() 对比
+ * user、ticket 是每个请求都会读取的缓存（用户缓存、登录凭证），id 是点赞、关注等集合中的成员（两种方式都写入 JSON）
+ * 序列化后的大小在 Setup 时输出
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompactRedisSerializerBenchmark {
+
+    @Param({"user", "ticket", "id"})
+    private String payload;
+
+    @Param({"compact", "json"})
+    private String format;
+
+    private RedisSerializer<Object> serializer;
+
+    private Object value;
+
+    private byte[] bytes;
+
+    @Setup
+    public void setup() {
+        serializer = "compact".equals(format) ? new CompactRedisSerializer(true) : RedisSerializer.json();
+        if ("user".equals(payload)) {
+            value = user();
+        } else if ("ticket".equals(payload)) {
+            value = ticket();
+        } else {
+            value = 1024768;
+        }
+        bytes = serializer.serialize(value);
+        System.out.println("[size] " + payload + " / " + format + ": " + bytes.length + " bytes");
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return serializer.serialize(value);
+    }
+
+    @Benchmark
+    public Object deserialize() {
+        return serializer.deserialize(bytes);
+    }
+
+    private static User user() {
+        User user = new User();
+        user.setId(1024768);
+        user.setUsername("benchmark_user");
+        user.setPassword("8a6f2805b4515ac12058e79e66539be9");
+        user.setSalt("49f10");
+        user.setEmail("benchmark_user@example.com");
+        user.setType(0);
+        user.setStatus(1);
+        user.setActivationCode("fb2c9a1f5d9a4e3c8d7b6a5f4e3d2c1b");
+        user.setHeaderUrl("http://images.nowcoder.com/head/768t.png");
+        user.setCreateTime(new Date(1631000000000L));
+        return user;
+    }
+
+    private static LoginTicket ticket() {
+        LoginTicket ticket = new LoginTicket();
+        ticket.setId(2048);
+        ticket.setUserId(1024768);
+        ticket.setTicket("5f0c6e8a9d2b4c7e8f1a3b5c7d9e0f12");
+        ticket.setStatus(0);
+        ticket.setExpired(new Date(1631000000000L + 3600L * 12 * 1000));
+        return ticket;
+    }
+}
@@ -0,0 +1,57 @@
+package com.ktf.community.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CommunityUtil.getJSONString：异步请求（点赞、关注、发送私信等）返回的 JSON
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonResponseBenchmark {
+
+    /**
+     * 只有状态码（发送私信、关注成功）
+     * @return
+     */
+    @Benchmark
+    public String codeOnly() {
+        return CommunityUtil.getJSONString(0);
+    }
+
+    /**
+     * 状态码和提示消息（发帖成功、参数错误）
+     * @return
+     */
+    @Benchmark
+    public String codeAndMessage() {
+        return CommunityUtil.getJSONString(1, "发布成功！");
+    }
+
+    /**
+     * 带业务数据（点赞返回点赞数量和状态）
+     * @return
+     */
+    @Benchmark
+    public String withData() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("likeCount", 1024L);
+        map.put("likeStatus", 1);
+        return CommunityUtil.getJSONString(0, null, map);
+    }
+}
@@ -0,0 +1,68 @@
+package com.ktf.community.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.web.util.HtmlUtils;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 发帖、评论、私信写入前的处理：转义 HTML 并过滤敏感词
+ * escapeThenFilter 是原来的做法（产生两份中间字符串），sanitize 是现在 DiscussPostService.addDiscussPost 的做法
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PostSanitizeBenchmark {
+
+    @Param({"zh", "markdown"})
+    private String language;
+
+    // 评论、帖子、长帖子
+    @Param({"200", "2000", "20000"})
+    private int length;
+
+    @Param({"2"})
+    private int hitsPer1000;
+
+    private SensitiveFilter sensitiveFilter;
+
+    private String title;
+
+    private String content;
+
+    @Setup
+    public void setup() {
+        List<String> words = BenchmarkCorpus.defaultDictionary();
+        sensitiveFilter = new SensitiveFilter();
+        sensitiveFilter.setWords(words);
+        title = BenchmarkCorpus.text(language, 30, hitsPer1000, words);
+        content = BenchmarkCorpus.text(language, length, hitsPer1000, words);
+    }
+
+    @Benchmark
+    public void escapeThenFilter(Blackhole blackhole) {
+        blackhole.consume(sensitiveFilter.filter(HtmlUtils.htmlEscape(title)));
+        blackhole.consume(sensitiveFilter.filter(HtmlUtils.htmlEscape(content)));
+    }
+
+    @Benchmark
+    public void sanitize(Blackhole blackhole) {
+        blackhole.consume(sensitiveFilter.sanitize(title));
+        blackhole.consume(sensitiveFilter.sanitize(content));
+    }
+}
@@ -0,0 +1,63 @@
+package com.ktf.community.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SensitiveFilter.filter 的吞吐量
+ * 按语言、文本长度、敏感词密度和词库大小组合测试
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SensitiveFilterBenchmark {
+
+    @Param({"zh", "en", "markdown"})
+    private String language;
+
+    // 标题、评论、长帖子
+    @Param({"64", "1000", "20000"})
+    private int length;
+
+    // 每 1000 个字符中的敏感词个数
+    @Param({"0", "2", "20"})
+    private int hitsPer1000;
+
+    // default：sensitive-words.txt，large：再加上 10000 个随机词
+    @Param({"default", "large"})
+    private String dictionary;
+
+    private SensitiveFilter sensitiveFilter;
+
+    private String text;
+
+    @Setup
+    public void setup() {
+        List<String> words = "large".equals(dictionary)
+                ? BenchmarkCorpus.largeDictionary(10000)
+                : BenchmarkCorpus.defaultDictionary();
+        sensitiveFilter = new SensitiveFilter();
+        sensitiveFilter.setWords(words);
+        text = BenchmarkCorpus.text(language, length, hitsPer1000, words);
+    }
+
+    @Benchmark
+    public String filter() {
+        return sensitiveFilter.filter(text);
+    }
+}
@@ -1,6 +1,9 @@
 package com.ktf.community.config;
 
+import com.ktf.community.quartz.DataRollupJob;
+import com.ktf.community.quartz.MessageArchiveJob;
 import com.ktf.community.quartz.PostScoreRefreshJob;
+import com.ktf.community.quartz.UserBloomRebuildJob;
 import org.quartz.JobDataMap;
 import org.quartz.JobDetail;
 import org.springframework.context.annotation.Bean;
@@ -43,6 +46,96 @@ public class QuartzConfig {
         factoryBean.setJobDataMap(new JobDataMap());
         return factoryBean;
     }
+
+    /**
+     * 系统通知归档任务
+     * @return
+     */
+    @Bean
+    public JobDetailFactoryBean messageArchiveJobDetail() {
+        JobDetailFactoryBean factoryBean = new JobDetailFactoryBean();
+        factoryBean.setJobClass(MessageArchiveJob.class);
+        factoryBean.setName("messageArchiveJob");
+        factoryBean.setGroup("communityJobGroup");
+        factoryBean.setDurability(true);
+        factoryBean.setRequestsRecovery(true);
+        return factoryBean;
+    }
+
+    /**
+     * 系统通知归档触发器
+     * @return
+     */
+    @Bean
+    public SimpleTriggerFactoryBean messageArchiveTrigger(JobDetail messageArchiveJobDetail) {
+        SimpleTriggerFactoryBean factoryBean = new SimpleTriggerFactoryBean();
+        factoryBean.setJobDetail(messageArchiveJobDetail);
+        factoryBean.setName("messageArchiveTrigger");
+        factoryBean.setGroup("communityTriggerGroup");
+        factoryBean.setRepeatInterval(1000 * 60 * 60 * 24); // 每天归档一次
+        factoryBean.setJobDataMap(new JobDataMap());
+        return factoryBean;
+    }
+
+    /**
+     * UV、DAU 汇总任务
+     * @return
+     */
+    @Bean
+    public JobDetailFactoryBean dataRollupJobDetail() {
+        JobDetailFactoryBean factoryBean = new JobDetailFactoryBean();
+        factoryBean.setJobClass(DataRollupJob.class);
+        factoryBean.setName("dataRollupJob");
+        factoryBean.setGroup("communityJobGroup");
+        factoryBean.setDurability(true);
+        factoryBean.setRequestsRecovery(true);
+        return factoryBean;
+    }
+
+    /**
+     * UV、DAU 汇总触发器
+     * @return
+     */
+    @Bean
+    public SimpleTriggerFactoryBean dataRollupTrigger(JobDetail dataRollupJobDetail) {
+        SimpleTriggerFactoryBean factoryBean = new SimpleTriggerFactoryBean();
+        factoryBean.setJobDetail(dataRollupJobDetail);
+        factoryBean.setName("dataRollupTrigger");
+        factoryBean.setGroup("communityTriggerGroup");
+        factoryBean.setRepeatInterval(1000 * 60 * 60); // 每小时检查一次，已经生成的汇总会跳过
+        factoryBean.setJobDataMap(new JobDataMap());
+        return factoryBean;
+    }
+
+    /**
+     * 用户布隆过滤器重建任务
+     * @return
+     */
+    @Bean
+    public JobDetailFactoryBean userBloomRebuildJobDetail() {
+        JobDetailFactoryBean factoryBean = new JobDetailFactoryBean();
+        factoryBean.setJobClass(UserBloomRebuildJob.class);
+        factoryBean.setName("userBloomRebuildJob");
+        factoryBean.setGroup("communityJobGroup");
+        factoryBean.setDurability(true);
+        factoryBean.setRequestsRecovery(true);
+        return factoryBean;
+    }
+
+    /**
+     * 用户布隆过滤器重建触发器
+     * @return
+     */
+    @Bean
+    public SimpleTriggerFactoryBean userBloomRebuildTrigger(JobDetail userBloomRebuildJobDetail) {
+        SimpleTriggerFactoryBean factoryBean = new SimpleTriggerFactoryBean();
+        factoryBean.setJobDetail(userBloomRebuildJobDetail);
+        factoryBean.setName("userBloomRebuildTrigger");
+        factoryBean.setGroup("communityTriggerGroup");
+        factoryBean.setRepeatInterval(1000 * 60 * 60 * 24); // 每天重建一次
+        factoryBean.setJobDataMap(new JobDataMap());
+        return factoryBean;
+    }
 }
 
 
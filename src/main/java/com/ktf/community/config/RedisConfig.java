@@ -1,9 +1,12 @@
 package com.ktf.community.config;
 
+import com.ktf.community.util.CompactRedisSerializer;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.RedisSerializer;
 
 /**
@@ -16,23 +19,39 @@ import org.springframework.data.redis.serializer.RedisSerializer;
 public class RedisConfig {
 
     @Bean
-    public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory factory) {
+    public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory factory,
+                                                       @Value("${community.redis.compact-serializer}") boolean compact) {
         RedisTemplate<String, Object> template = new RedisTemplate<>();
         template.setConnectionFactory(factory);
 
+        // 用户、登录凭证使用二进制格式，其他类型使用 JSON，读取时两种格式都支持
+        CompactRedisSerializer valueSerializer = new CompactRedisSerializer(compact);
+
         // 设置 key 的序列化的方式
         template.setKeySerializer(RedisSerializer.string());
         // 设置 value 的序列化方式
-        template.setValueSerializer(RedisSerializer.json());
+        template.setValueSerializer(valueSerializer);
         // 设置 hash 的 key 的序列化方式
         template.setHashKeySerializer(RedisSerializer.string());
         // 设置 hash  的 value 的序列化的方式
-        template.setHashValueSerializer(RedisSerializer.json());
+        template.setHashValueSerializer(valueSerializer);
 
         template.afterPropertiesSet();
 
         return template;
     }
+
+    /**
+     * Redis 发布/订阅的监听容器，各组件自行向其中注册监听的频道
+     * @param factory
+     * @return
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory factory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(factory);
+        return container;
+    }
 }
 
 
@@ -1,7 +1,9 @@
 package com.ktf.community.config;
 
+import com.ktf.community.controller.interceptor.DataInterceptor;
 import com.ktf.community.controller.interceptor.LoginTicketInterceptor;
 import com.ktf.community.controller.interceptor.MessageInterceptor;
+import com.ktf.community.controller.interceptor.RateLimitInterceptor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
@@ -22,6 +24,12 @@ public class WebMvcConfig implements WebMvcConfigurer {
     @Autowired
     private MessageInterceptor messageInterceptor;
 
+    @Autowired
+    private RateLimitInterceptor rateLimitInterceptor;
+
+    @Autowired
+    private DataInterceptor dataInterceptor;
+
     /**
      * 对除静态资源外所有路径进行拦截
      * @param registry
@@ -31,9 +39,17 @@ public class WebMvcConfig implements WebMvcConfigurer {
         registry.addInterceptor(loginTicketInterceptor)
                 .excludePathPatterns("/css/**", "/js/**", "/img/**", "/editor-md/**", "/editor-md-upload/**");
 
+        // 需要在 loginTicketInterceptor 之后执行，按登录用户限流
+        registry.addInterceptor(rateLimitInterceptor)
+                .excludePathPatterns("/css/**", "/js/**", "/img/**", "/editor-md/**", "/editor-md-upload/**");
+
         registry.addInterceptor(messageInterceptor)
                 .excludePathPatterns("/css/**", "/js/**", "/img/**", "/editor-md/**", "/editor-md-upload/**");
 
+        // 需要在 loginTicketInterceptor 之后执行，统计登录用户
+        registry.addInterceptor(dataInterceptor)
+                .excludePathPatterns("/css/**", "/js/**", "/img/**", "/editor-md/**", "/editor-md-upload/**", "/error", "/favicon.ico");
+
 
     }
 
@@ -1,16 +1,28 @@
 package com.ktf.community.controller;
 
 import com.ktf.community.service.DataService;
+import com.ktf.community.util.CaptchaPool;
+import com.ktf.community.util.CommunityUtil;
+import com.ktf.community.util.RequestExecutor;
+import com.ktf.community.util.SensitiveFilter;
+import com.ktf.community.util.UserBloomFilter;
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
 
 import javax.jws.WebParam;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * @author github.com/kuangtf
@@ -22,6 +34,18 @@ public class DataController {
     @Autowired
     private DataService dataService;
 
+    @Autowired
+    private CaptchaPool captchaPool;
+
+    @Autowired
+    private RequestExecutor requestExecutor;
+
+    @Autowired
+    private SensitiveFilter sensitiveFilter;
+
+    @Autowired
+    private UserBloomFilter userBloomFilter;
+
     /**
      * 进入统计界面
      * @return
@@ -67,7 +91,116 @@ public class DataController {
         return "forward:/data";
     }
 
+    /**
+     * 统计某一天各个路由的 PV
+     * @param date
+     * @param model
+     * @return
+     */
+    @PostMapping("/data/pv")
+    public String getPV(@DateTimeFormat(pattern = "yyyy-MM-dd") Date date, Model model) {
+        // 按路由排序显示
+        Map<String, Long> pvResult = new TreeMap<>(dataService.findPageViews(date));
+        model.addAttribute("pvResult", pvResult);
+        model.addAttribute("pvDate", date);
+        return "forward:/data";
+    }
+
+    /**
+     * 统计某个帖子的访客数量（同一访客只计一次）
+     * @param postId
+     * @param start
+     * @param end
+     * @param model
+     * @return
+     */
+    @PostMapping("/data/post")
+    public String getPostViews(int postId,
+                               @DateTimeFormat(pattern = "yyyy-MM-dd") Date start,
+                               @DateTimeFormat(pattern = "yyyy-MM-dd") Date end,
+                               Model model) {
+        long postViews = dataService.calculatePostViews(postId, start, end);
+        model.addAttribute("postViewResult", postViews);
+        model.addAttribute("postViewPostId", postId);
+        model.addAttribute("postViewStartDate", start);
+        model.addAttribute("postViewEndDate", end);
+        return "forward:/data";
+    }
+
+    /**
+     * 重建用户名和邮箱的布隆过滤器（补上不经过注册写入的用户、清除写入失败的记录）
+     * @return
+     */
+    @PostMapping("/data/bloom/rebuild")
+    @ResponseBody
+    public String rebuildUserBloomFilter() {
+        userBloomFilter.rebuild();
+        return CommunityUtil.getJSONString(0);
+    }
+
+    /**
+     * 验证码池的统计信息（池中数量、容量、生成数量、取出数量、池子为空的次数）
+     * @return
+     */
+    @GetMapping("/data/captcha")
+    @ResponseBody
+    public String getCaptchaPoolStats() {
+        return CommunityUtil.getJSONString(0, null, captchaPool.getStats());
+    }
+
+    /**
+     * 请求内并行查询线程池的统计信息（线程数、队列长度、在请求线程中执行的次数、超时次数、排队时间）
+     * @return
+     */
+    @GetMapping("/data/executor")
+    @ResponseBody
+    public String getRequestExecutorStats() {
+        return CommunityUtil.getJSONString(0, null, requestExecutor.getStats());
+    }
 
+    /**
+     * 敏感词词库的统计信息（版本号、敏感词数量、自动机节点数量）
+     * @return
+     */
+    @GetMapping("/data/sensitive")
+    @ResponseBody
+    public String getSensitiveStats() {
+        return CommunityUtil.getJSONString(0, null, sensitiveFilter.getStats());
+    }
+
+    /**
+     * 添加敏感词，所有节点在几秒内生效
+     * @param words 多个敏感词用换行或逗号分隔
+     * @return
+     */
+    @PostMapping("/data/sensitive/add")
+    @ResponseBody
+    public String addSensitiveWords(String words) {
+        sensitiveFilter.addWords(splitWords(words));
+        return CommunityUtil.getJSONString(0);
+    }
+
+    /**
+     * 删除敏感词，所有节点在几秒内生效
+     * @param words 多个敏感词用换行或逗号分隔
+     * @return
+     */
+    @PostMapping("/data/sensitive/remove")
+    @ResponseBody
+    public String removeSensitiveWords(String words) {
+        sensitiveFilter.removeWords(splitWords(words));
+        return CommunityUtil.getJSONString(0);
+    }
+
+    private List<String> splitWords(String words) {
+        List<String> result = new ArrayList<>();
+        for (String word : StringUtils.split(StringUtils.defaultString(words), ",\r\n")) {
+            if (StringUtils.isNotBlank(word)) {
+                result.add(word.trim());
+            }
+        }
+        return result;
+    }
 }
 
 
@@ -10,6 +10,7 @@ import com.ktf.community.util.CommunityConstant;
 import com.ktf.community.util.CommunityUtil;
 import com.ktf.community.util.HostHolder;
 import com.ktf.community.util.RedisKeyUtil;
+import com.ktf.community.util.RequestExecutor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.RedisTemplate;
@@ -17,10 +18,10 @@ import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
-import org.springframework.web.util.HtmlUtils;
 
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 帖子相关
@@ -46,6 +47,9 @@ public class DiscussPostController implements CommunityConstant {
     @Autowired
     private CommentService commentService;
 
+    @Autowired
+    private RequestExecutor requestExecutor;
+
     @Value("${community.path.editormdUploadPath}")
     private String editormdUploadPath;
 
@@ -148,6 +152,8 @@ public class DiscussPostController implements CommunityConstant {
 
     /**
      * 进入帖子详情页
+     * 作者、帖子的点赞、评论列表相互独立，在 RequestExecutor 中并行查询；
+     * 评论的回复、评论和回复的作者、点赞数量、点赞状态各批量查询一次
      * @param discussPostId
      * @param model
      * @param page
@@ -158,86 +164,127 @@ public class DiscussPostController implements CommunityConstant {
         // 帖子
         DiscussPost discussPost = discussPostService.findDiscussPostById(discussPostId);
 
-        // 内容反转义，不然 MD 格式无法显示
-        String content = HtmlUtils.htmlUnescape(discussPost.getContent());
-        discussPost.setContent(content);
-        model.addAttribute("post", discussPost);
+        //评论分页信息
+        page.setLimit(5);
+        page.setPath("/discuss/detail/" + discussPostId);
+        page.setRows(discussPost.getCommentCount());
+        int offset = page.getOffset();
+        int limit = page.getLimit();
 
         // 作者
-        User user = userService.findUserById(discussPost.getUserId());
-        model.addAttribute("user", user);
-
+        CompletableFuture<UserProfile> userFuture = requestExecutor.supply(
+                () -> userService.findUserProfileById(discussPost.getUserId()));
         // 帖子的点赞数量
-        long likeCount = likeService.findEntityLikeCount(ENTITY_TYPE_POST, discussPostId);
-        model.addAttribute("likeCount", likeCount);
-
+        CompletableFuture<Long> likeCountFuture = requestExecutor.supply(
+                () -> likeService.findEntityLikeCount(ENTITY_TYPE_POST, discussPostId));
         // 当前登录用户对该帖子的点赞状态：1：已赞，0：未赞
-        int likeStatus = hostHolder.getUser() == null ? 0 : likeService.findEntityLikeStatus(hostHolder.getUser().getId(), ENTITY_TYPE_POST, discussPostId);
-        model.addAttribute("likeStatus", likeStatus);
+        CompletableFuture<Integer> likeStatusFuture = requestExecutor.supply(
+                () -> hostHolder.getUser() == null ? 0 : likeService.findEntityLikeStatus(hostHolder.getUser().getId(), ENTITY_TYPE_POST, discussPostId));
+        // 帖子的评论列表及其相关信息
+        CompletableFuture<List<Map<String, Object>>> commentsFuture = requestExecutor.supply(
+                () -> commentService.findCommentByEntity(ENTITY_TYPE_POST, discussPostId, offset, limit))
+                .thenCompose(this::findCommentVoList);
 
-        //评论分页信息
-        page.setLimit(5);
-        page.setPath("/discuss/detail/" + discussPostId);
-        page.setRows(discussPost.getCommentCount());
+        requestExecutor.join(CompletableFuture.allOf(userFuture, likeCountFuture, likeStatusFuture, commentsFuture));
 
-        // 帖子的评论列表
-        List<Comment> commentList = commentService.findCommentByEntity(ENTITY_TYPE_POST, discussPost.getId(), page.getOffset(), page.getLimit());
-
-         // 封装评论及其相关信息
-        ArrayList<Map<String, Object>> commentVoList = new ArrayList<>();
-        if (commentList != null) {
-            for (Comment comment : commentList) {
-                // 存储对帖子的评论
-                HashMap<String, Object> commentVo = new HashMap<>();
-                // 获取评论
-                commentVo.put("comment", comment);
-                // 获取发布评论的作者
-                commentVo.put("user", userService.findUserById(comment.getUserId()));
-                // 该评论点赞数量
-                likeCount = likeService.findEntityLikeCount(ENTITY_TYPE_COMMENT, comment.getId());
-                commentVo.put("likeCount", likeCount);
-                // 当前登录用户对该评论的点赞状态
-                likeStatus = hostHolder.getUser() == null ? 0 : likeService.findEntityLikeStatus(hostHolder.getUser().getId(), ENTITY_TYPE_COMMENT, comment.getUserId());
-                commentVo.put("likeStatus", likeStatus);
-
-                // 存储每个评论对应的回复（不做分页）
-                // 查询评论的所有回复
-                List<Comment> replyList = commentService.findCommentByEntity(ENTITY_TYPE_COMMENT, comment.getId(), 0, Integer.MAX_VALUE);
-                // 封装对评论的评论和评论的作者信息
-                ArrayList<Map<String, Object>> replyVoList = new ArrayList<>();
-                if (replyList != null) {
-                    for (Comment reply : replyList) {
-                        HashMap<String, Object> replyVo = new HashMap<>();
-                        // 回复
-                        replyVo.put("reply", reply);
-                        // 发布该回复的作者
-                        replyVo.put("user", userService.findUserById(reply.getUserId()));
-                        // 该回复的目标用户
-                        User target = reply.getTargetId() == 0 ? null : userService.findUserById(reply.getTargetId());
-                        replyVo.put("target", target);
-                        // 该回复的点赞数量
-                        likeCount = likeService.findEntityLikeCount(ENTITY_TYPE_COMMENT, reply.getId());
-                        replyVo.put("likeCount", likeCount);
-                        // 当前登录用户的点赞状态
-                        likeStatus = hostHolder.getUser() == null ? 0 : likeService.findEntityLikeStatus(hostHolder.getUser().getId(), ENTITY_TYPE_COMMENT, reply.getId());
-                        replyVo.put("likeStatus", likeStatus);
-
-                        replyVoList.add(replyVo);
-                    }
-                }
-                // 封装该帖子的所有评论
-                commentVo.put("replys", replyVoList);
+        // 正文直接输出发帖时渲染好的 HTML
+        model.addAttribute("post", discussPost);
+        model.addAttribute("user", userFuture.join());
+        model.addAttribute("likeCount", likeCountFuture.join());
+        model.addAttribute("likeStatus", likeStatusFuture.join());
+        model.addAttribute("comments", commentsFuture.join());
 
-                // 每个评论对应的回复数量
-                int replyCount = commentService.findCommentCount(ENTITY_TYPE_COMMENT, comment.getId());
-                commentVo.put("replyCount", replyCount);
+        return "/site/discuss-detail";
+    }
 
-                commentVoList.add(commentVo);
-            }
+    /**
+     * 封装评论及其相关信息：先查出所有回复，再并行查询所有评论和回复的作者、点赞数量、点赞状态
+     * @param commentList 当前页的评论
+     * @return
+     */
+    private CompletableFuture<List<Map<String, Object>>> findCommentVoList(List<Comment> commentList) {
+        if (commentList == null || commentList.isEmpty()) {
+            return CompletableFuture.completedFuture(new ArrayList<>());
+        }
+        List<Integer> commentIds = new ArrayList<>();
+        for (Comment comment : commentList) {
+            commentIds.add(comment.getId());
         }
-        model.addAttribute("comments", commentVoList);
 
-        return "/site/discuss-detail";
+        // 查询每个评论的所有回复（不做分页）
+        return requestExecutor.supply(() -> commentService.findCommentByEntities(ENTITY_TYPE_COMMENT, commentIds))
+                .thenCompose(replyMap -> {
+                    Set<Integer> userIds = new HashSet<>();
+                    List<Integer> entityIds = new ArrayList<>(commentIds);
+                    for (Comment comment : commentList) {
+                        userIds.add(comment.getUserId());
+                        for (Comment reply : replyMap.getOrDefault(comment.getId(), Collections.emptyList())) {
+                            userIds.add(reply.getUserId());
+                            if (reply.getTargetId() != 0) {
+                                userIds.add(reply.getTargetId());
+                            }
+                            entityIds.add(reply.getId());
+                        }
+                    }
+
+                    // 评论、回复的作者和回复的目标用户
+                    CompletableFuture<Map<Integer, UserProfile>> usersFuture = requestExecutor.supply(
+                            () -> userService.findUserProfilesByIds(userIds));
+                    // 评论、回复的点赞数量
+                    CompletableFuture<Map<Integer, Long>> likeCountsFuture = requestExecutor.supply(
+                            () -> likeService.findEntityLikeCounts(ENTITY_TYPE_COMMENT, entityIds));
+                    // 当前登录用户对评论、回复的点赞状态
+                    CompletableFuture<Map<Integer, Integer>> likeStatusesFuture = requestExecutor.supply(
+                            () -> hostHolder.getUser() == null ? Collections.<Integer, Integer>emptyMap()
+                                    : likeService.findEntityLikeStatuses(hostHolder.getUser().getId(), ENTITY_TYPE_COMMENT, entityIds));
+
+                    return CompletableFuture.allOf(usersFuture, likeCountsFuture, likeStatusesFuture).thenApply(v -> {
+                        Map<Integer, UserProfile> users = usersFuture.join();
+                        Map<Integer, Long> likeCounts = likeCountsFuture.join();
+                        Map<Integer, Integer> likeStatuses = likeStatusesFuture.join();
+
+                        List<Map<String, Object>> commentVoList = new ArrayList<>();
+                        for (Comment comment : commentList) {
+                            // 存储对帖子的评论
+                            HashMap<String, Object> commentVo = new HashMap<>();
+                            // 评论
+                            commentVo.put("comment", comment);
+                            // 发布评论的作者
+                            commentVo.put("user", users.get(comment.getUserId()));
+                            // 该评论点赞数量
+                            commentVo.put("likeCount", likeCounts.get(comment.getId()));
+                            // 当前登录用户对该评论的点赞状态
+                            commentVo.put("likeStatus", likeStatuses.getOrDefault(comment.getId(), 0));
+
+                            // 封装对评论的评论和评论的作者信息
+                            List<Comment> replyList = replyMap.getOrDefault(comment.getId(), Collections.emptyList());
+                            ArrayList<Map<String, Object>> replyVoList = new ArrayList<>();
+                            for (Comment reply : replyList) {
+                                HashMap<String, Object> replyVo = new HashMap<>();
+                                // 回复
+                                replyVo.put("reply", reply);
+                                // 发布该回复的作者
+                                replyVo.put("user", users.get(reply.getUserId()));
+                                // 该回复的目标用户
+                                replyVo.put("target", reply.getTargetId() == 0 ? null : users.get(reply.getTargetId()));
+                                // 该回复的点赞数量
+                                replyVo.put("likeCount", likeCounts.get(reply.getId()));
+                                // 当前登录用户的点赞状态
+                                replyVo.put("likeStatus", likeStatuses.getOrDefault(reply.getId(), 0));
+
+                                replyVoList.add(replyVo);
+                            }
+                            // 封装该帖子的所有评论
+                            commentVo.put("replys", replyVoList);
+
+                            // 每个评论对应的回复数量（回复没有分页，就是查出的回复个数）
+                            commentVo.put("replyCount", replyList.size());
+
+                            commentVoList.add(commentVo);
+                        }
+                        return commentVoList;
+                    });
+                });
     }
 
     /**
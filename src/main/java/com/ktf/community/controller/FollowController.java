@@ -3,6 +3,7 @@ package com.ktf.community.controller;
 import com.ktf.community.entity.Event;
 import com.ktf.community.entity.Page;
 import com.ktf.community.entity.User;
+import com.ktf.community.entity.UserProfile;
 import com.ktf.community.event.EventProducer;
 import com.ktf.community.service.FollowService;
 import com.ktf.community.service.UserService;
@@ -89,7 +90,7 @@ public class FollowController implements CommunityConstant {
      */
     @GetMapping("/followers/{userId}")
     public String getFollowers(@PathVariable("userId") int userId, Page page, Model model) {
-        User user = userService.findUserById(userId);
+        UserProfile user = userService.findUserProfileById(userId);
         if (user == null) {
             throw new RuntimeException("该用户不存在");
         }
@@ -106,7 +107,7 @@ public class FollowController implements CommunityConstant {
         if (userList != null) {
             for (Map<String, Object> map : userList) {
                 // 获取被关注的用户
-                User u = (User) map.get("user");
+                UserProfile u = (UserProfile) map.get("user");
                 // 判断当前列表中的用户是否已关注这个列表中的某个用户
                 map.put("hasFollowed", hasFollowed(u.getId()));
             }
@@ -126,7 +127,7 @@ public class FollowController implements CommunityConstant {
      */
     @GetMapping("/followees/{userId}")
     public String getFollowees(@PathVariable("userId") int userId, Page page, Model model) {
-        User user = userService.findUserById(userId);
+        UserProfile user = userService.findUserProfileById(userId);
         if (user == null) {
             throw new RuntimeException("该用户不存在");
         }
@@ -141,7 +142,7 @@ public class FollowController implements CommunityConstant {
 
         if (userList != null) {
             for (Map<String, Object> map : userList) {
-                User u = (User) map.get("user");   // 被关注的用户
+                UserProfile u = (UserProfile) map.get("user");   // 被关注的用户
                 // 判断当前登录用户是否已关注这个关注列表中的某个用户
                 map.put("hasFollowed", hasFollowed(u.getId()));
 
@@ -2,7 +2,7 @@ package com.ktf.community.controller;
 
 import com.ktf.community.entity.DiscussPost;
 import com.ktf.community.entity.Page;
-import com.ktf.community.entity.User;
+import com.ktf.community.entity.UserProfile;
 import com.ktf.community.service.DiscussPostService;
 import com.ktf.community.service.LikeService;
 import com.ktf.community.service.UserService;
@@ -65,7 +65,7 @@ public class IndexController implements CommunityConstant {
             for (DiscussPost post : list) {
                 HashMap<String, Object> map = new HashMap<>();
                 map.put("post", post);
-                User user = userService.findUserById(post.getUserId());
+                UserProfile user = userService.findUserProfileById(post.getUserId());
                 map.put("user", user);
                 long likeCount = likeService.findEntityLikeCount(ENTITY_TYPE_POST, post.getId());
                 map.put("likeCount", likeCount);
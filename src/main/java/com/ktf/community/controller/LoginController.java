@@ -1,8 +1,8 @@
 package com.ktf.community.controller;
 
-import com.google.code.kaptcha.Producer;
 import com.ktf.community.entity.User;
 import com.ktf.community.service.UserService;
+import com.ktf.community.util.CaptchaPool;
 import com.ktf.community.util.CommunityConstant;
 import com.ktf.community.util.CommunityUtil;
 import com.ktf.community.util.RedisKeyUtil;
@@ -17,11 +17,9 @@ import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 
-import javax.imageio.ImageIO;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletResponse;
-import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
@@ -43,7 +41,7 @@ public class LoginController implements CommunityConstant {
     private UserService userService;
 
     @Autowired
-    private Producer captchaProducer;
+    private CaptchaPool captchaPool;
 
     @Value("${server.servlet.context-path}")
     private String contextPath;
@@ -135,12 +133,9 @@ public class LoginController implements CommunityConstant {
      */
     @GetMapping("/captcha")
     public void getCaptcha(HttpServletResponse response) {
-        // 生成验证码
-        // 生成随机字符
-        String text = captchaProducer.createText();
-        logger.info("验证码" + text);
-        // 生验证码成图片，并将生成的随机字符置入该图片中
-        BufferedImage image = captchaProducer.createImage(text);
+        // 从验证码池中取出一个预先生成好的验证码（随机字符和对应的 PNG 图片）
+        CaptchaPool.Captcha captcha = captchaPool.take();
+        String text = captcha.getText();
 
         // 验证码的归属者
         // 获得一个随机字符串，由于用户还没登录，没法通过用户 id 来唯一的对应它的验证码
@@ -162,8 +157,9 @@ public class LoginController implements CommunityConstant {
         // 将图片输出给浏览器
         response.setContentType("image/png");
         try {
+            response.setContentLength(captcha.getPng().length);
             ServletOutputStream os = response.getOutputStream();
-            ImageIO.write(image, "png", os);
+            os.write(captcha.getPng());
         } catch (IOException e) {
             logger.error("响应验证码失败", e.getMessage());
         }
@@ -1,9 +1,10 @@
 package com.ktf.community.controller;
 
-import com.alibaba.fastjson.JSONObject;
 import com.ktf.community.entity.Message;
+import com.ktf.community.entity.NoticeSummary;
 import com.ktf.community.entity.Page;
 import com.ktf.community.entity.User;
+import com.ktf.community.entity.UserProfile;
 import com.ktf.community.service.MessageService;
 import com.ktf.community.service.UserService;
 import com.ktf.community.util.CommunityConstant;
@@ -16,7 +17,6 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.ResponseBody;
-import org.springframework.web.util.HtmlUtils;
 
 import javax.jws.WebParam;
 import java.util.*;
@@ -103,7 +103,7 @@ public class MessageController implements CommunityConstant {
             for (Message message : letterList) {
                 HashMap<String, Object> map = new HashMap<>();
                 map.put("letter", message);
-                map.put("fromUser", userService.findUserById(message.getFromId()));
+                map.put("fromUser", userService.findUserProfileById(message.getFromId()));
                 letters.add(map);
             }
         }
@@ -112,33 +112,33 @@ public class MessageController implements CommunityConstant {
         // 私信目标
         model.addAttribute("target", getLetterTarget(conversationId));
 
-        // 将私信列表中的未读消息改为已读
-        List<Integer> ids = getUnreadLetterIds(letterList);
-        if (!ids.isEmpty()) {
-            messageService.readMessage(ids);
+        // 将私信列表中的未读消息改为已读（异步批量写入数据库）
+        List<Message> unreadLetters = getUnreadLetters(letterList);
+        if (!unreadLetters.isEmpty()) {
+            messageService.readMessageAsync(unreadLetters);
         }
 
         return "/site/letter-detail";
     }
 
     /**
-     * 获取当前登录用户未读私信的 id
+     * 获取当前登录用户未读的私信
      * @param letterList
      * @return
      */
-    private List<Integer> getUnreadLetterIds(List<Message> letterList) {
-        ArrayList<Integer> ids = new ArrayList<>();
+    private List<Message> getUnreadLetters(List<Message> letterList) {
+        ArrayList<Message> unreadLetters = new ArrayList<>();
 
         if (letterList != null) {
             for (Message message : letterList) {
                 // 当前用户是私信的接收者且该私信处于未读状态
                 if (hostHolder.getUser().getId() == message.getToId() && message.getStatus() == 0) {
-                    ids.add(message.getId());
+                    unreadLetters.add(message);
                 }
             }
         }
 
-        return ids;
+        return unreadLetters;
     }
 
     /**
@@ -146,16 +146,16 @@ public class MessageController implements CommunityConstant {
      * @param conversationId
      * @return
      */
-    private User getLetterTarget(String conversationId) {
+    private UserProfile getLetterTarget(String conversationId) {
         String[] ids = conversationId.split("_");
         int id0 = Integer.parseInt(ids[0]);
         int id1 = Integer.parseInt(ids[1]);
 
         if (hostHolder.getUser().getId() == id0) {
-            return userService.findUserById(id1);
+            return userService.findUserProfileById(id1);
         }
         else {
-            return userService.findUserById(id0);
+            return userService.findUserProfileById(id0);
         }
     }
 
@@ -204,91 +204,75 @@ public class MessageController implements CommunityConstant {
     public String getNoticeList(Model model) {
         User user = hostHolder.getUser();
 
-        // 查询评论类通知
-        Message message = messageService.findLatestNotice(user.getId(), TOPIC_COMMENT);
-        // 状态通知需要的各种数据
-        if (message != null) {
-            Map<String, Object> messageV0 = new HashMap<>();
+        // 一次查询出各个主题的最新通知、通知数量和未读数量
+        Map<String, NoticeSummary> summaries = messageService.findNoticeSummaries(user.getId());
 
-            messageV0.put("message", message);
-
-            String content = HtmlUtils.htmlUnescape(message.getContent());
-            // 将消息的 JSON 格式转化为 Map 类型
-            Map<String, Object> data = JSONObject.parseObject(content, HashMap.class);
-
-            messageV0.put("user", userService.findUserById((Integer) data.get("userId")));
-            messageV0.put("entityType", data.get("entityType"));
-            messageV0.put("entityId", data.get("entityId"));
-            messageV0.put("postId", data.get("postId"));
-
-            // 查询通知数量
-            int count = messageService.findNoticeCount(user.getId(), TOPIC_COMMENT);
-            messageV0.put("count", count);
-
-            // 查询未读通知的数量
-            int unread = messageService.findNoticeUnReadCount(user.getId(), TOPIC_COMMENT);
-            messageV0.put("unread", unread);
-
-            model.addAttribute("commentNotice", messageV0);
+        // 一次性查询出所有通知的触发者
+        List<Integer> actorIds = new ArrayList<>();
+        for (NoticeSummary summary : summaries.values()) {
+            actorIds.add(summary.getLatestNotice().getActorId());
         }
+        Map<Integer, UserProfile> actors = userService.findUserProfilesByIds(actorIds);
 
-        // 查询点赞类通知
-        message = messageService.findLatestNotice(user.getId(), TOPIC_LIKE);
-        if (message != null) {
-            Map<String, Object> messageV0 = new HashMap<>();
-
-            messageV0.put("message", message);
-
-            String content = HtmlUtils.htmlUnescape(message.getContent());
-            HashMap<String, Object> data = JSONObject.parseObject(content, HashMap.class);
-
-            messageV0.put("user", userService.findUserById((Integer) data.get("userId")));
-            messageV0.put("entityType", data.get("entityType"));
-            messageV0.put("entityId", data.get("entityId"));
-            messageV0.put("postId", data.get("postId"));
-
-            int count = messageService.findNoticeCount(user.getId(), TOPIC_LIKE);
-            messageV0.put("count", count);
-
-            int unread = messageService.findNoticeUnReadCount(user.getId(), TOPIC_LIKE);
-            messageV0.put("unread", unread);
-
-            model.addAttribute("likeNotice", messageV0);
+        // 评论类通知
+        Map<String, Object> commentNotice = getNoticeVo(summaries.get(TOPIC_COMMENT), actors);
+        if (commentNotice != null) {
+            model.addAttribute("commentNotice", commentNotice);
         }
 
-        // 查询关注类通知
-        message = messageService.findLatestNotice(user.getId(), TOPIC_FOLLOW);
-        if (message != null) {
-            Map<String, Object> messageV0 = new HashMap<>();
-
-            messageV0.put("message", message);
-
-            String content = HtmlUtils.htmlUnescape(message.getContent());
-            Map<String, Object> data = JSONObject.parseObject(content, HashMap.class);
-
-            messageV0.put("user", userService.findUserById((Integer) data.get("userId")));
-            messageV0.put("entityType", data.get("entityType"));
-            messageV0.put("entityId", data.get("entityId"));
-
-            int count = messageService.findNoticeCount(user.getId(), TOPIC_FOLLOW);
-            messageV0.put("count", count);
-
-            int unread = messageService.findNoticeUnReadCount(user.getId(), TOPIC_FOLLOW);
-            messageV0.put("unread", unread);
+        // 点赞类通知
+        Map<String, Object> likeNotice = getNoticeVo(summaries.get(TOPIC_LIKE), actors);
+        if (likeNotice != null) {
+            model.addAttribute("likeNotice", likeNotice);
+        }
 
-            model.addAttribute("followNotice", messageV0);
+        // 关注类通知
+        Map<String, Object> followNotice = getNoticeVo(summaries.get(TOPIC_FOLLOW), actors);
+        if (followNotice != null) {
+            model.addAttribute("followNotice", followNotice);
         }
 
-        // 查询未读消息数量
+        // 查询未读消息数量（系统通知的未读数量由各主题的未读数量累加得到）
         int letterUnreadCount = messageService.findLetterUnreadCount(user.getId(), null);
         model.addAttribute("letterUnreadCount", letterUnreadCount);
-        int noticeUnreadCount = messageService.findNoticeUnReadCount(user.getId(), null);
+        int noticeUnreadCount = 0;
+        for (NoticeSummary summary : summaries.values()) {
+            noticeUnreadCount += summary.getUnreadCount();
+        }
         model.addAttribute("noticeUnreadCount", noticeUnreadCount);
 
         return "/site/notice";
 
     }
 
+    /**
+     * 封装某个主题的通知概览（状态通知需要的各种数据）
+     * @param summary
+     * @param actors 通知的触发者，key - 用户 id
+     * @return 该主题下没有通知时返回 null
+     */
+    private Map<String, Object> getNoticeVo(NoticeSummary summary, Map<Integer, UserProfile> actors) {
+        if (summary == null || summary.getLatestNotice() == null) {
+            return null;
+        }
+        Message message = summary.getLatestNotice();
+        Map<String, Object> messageV0 = new HashMap<>();
+
+        messageV0.put("message", message);
+
+        messageV0.put("user", actors.get(message.getActorId()));
+        messageV0.put("entityType", message.getEntityType());
+        messageV0.put("entityId", message.getEntityId());
+        messageV0.put("postId", message.getPostId());
+
+        // 通知数量
+        messageV0.put("count", summary.getCount());
+        // 未读通知的数量
+        messageV0.put("unread", summary.getUnreadCount());
+
+        return messageV0;
+    }
+
     /**
      * 查询某个主题所包含的通知裂列表
      * @param topic
@@ -307,29 +291,35 @@ public class MessageController implements CommunityConstant {
         List<Message> noticeList = messageService.findNotices(user.getId(), topic, page.getOffset(), page.getLimit());
         ArrayList<Map<String, Object>> noticeVoList = new ArrayList<>();
         if (noticeList != null) {
+            // 一次性查询出本页通知涉及的所有用户（触发者和发送者）
+            List<Integer> userIds = new ArrayList<>();
+            for (Message notice : noticeList) {
+                userIds.add(notice.getActorId());
+                userIds.add(notice.getFromId());
+            }
+            Map<Integer, UserProfile> users = userService.findUserProfilesByIds(userIds);
+
             for (Message notice : noticeList) {
                 Map<String, Object> map = new HashMap<>();
                 // 通知
                 map.put("notice", notice);
                 // 内容
-                String content = HtmlUtils.htmlUnescape(notice.getContent());
-                Map<String, Object> data = JSONObject.parseObject(content, HashMap.class);
-                map.put("user", userService.findUserById((Integer) data.get("userId")));
-                map.put("entityType", data.get("entityType"));
-                map.put("entityId", data.get("entityId"));
-                map.put("postId", data.get("postId"));
+                map.put("user", users.get(notice.getActorId()));
+                map.put("entityType", notice.getEntityType());
+                map.put("entityId", notice.getEntityId());
+                map.put("postId", notice.getPostId());
                 // 发送系统通知的作者
-                map.put("fromUser", userService.findUserById(notice.getFromId()));
+                map.put("fromUser", users.get(notice.getFromId()));
 
                 noticeVoList.add(map);
             }
         }
         model.addAttribute("notices", noticeVoList);
 
-        // 设置已读
-        List<Integer> ids = getUnreadLetterIds(noticeList);
-        if (!ids.isEmpty()) {
-            messageService.readMessage(ids);
+        // 设置已读（异步批量写入数据库）
+        List<Message> unreadNotices = getUnreadLetters(noticeList);
+        if (!unreadNotices.isEmpty()) {
+            messageService.readMessageAsync(unreadNotices);
         }
 
         return "/site/notice-detail";
@@ -0,0 +1,344 @@
+package com.ktf.community.controller;
+
+import com.ktf.community.entity.Comment;
+import com.ktf.community.entity.CommentItem;
+import com.ktf.community.entity.CursorPage;
+import com.ktf.community.entity.DiscussPost;
+import com.ktf.community.entity.PostDetail;
+import com.ktf.community.entity.PostSummary;
+import com.ktf.community.entity.UserProfile;
+import com.ktf.community.service.CommentService;
+import com.ktf.community.service.DiscussPostService;
+import com.ktf.community.service.LikeService;
+import com.ktf.community.service.UserService;
+import com.ktf.community.util.CommunityConstant;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 只读的 JSON 接口（移动端、CDN 使用）：帖子列表、帖子详情、帖子的评论
+ *
+ * 返回的 DTO 由 Jackson 直接序列化到响应的输出流，不先拼成字符串
+ * 列表按游标分页：响应中的 nextCursor 原样传回即可获取下一页，翻到很靠后的页也不需要 offset 扫描
+ * 返回的数据与登录用户无关（不包含点赞状态），可以被浏览器和代理缓存：Cache-Control 加上弱 ETag，内容没变时返回 304
+ */
+@Controller
+@RequestMapping("/api/v1")
+public class PostApiController implements CommunityConstant {
+
+    @Autowired
+    private DiscussPostService discussPostService;
+
+    @Autowired
+    private CommentService commentService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private LikeService likeService;
+
+    // 响应可以被缓存多久（秒）
+    @Value("${community.api.max-age-seconds}")
+    private int maxAgeSeconds;
+
+    // 每页最多多少条数据
+    @Value("${community.api.max-page-size}")
+    private int maxPageSize;
+
+    /**
+     * 帖子列表
+     * @param order new：按时间排序，hot：按热度排序
+     * @param cursor 上一页返回的 nextCursor，不传时返回第一页
+     * @param limit 每页多少条数据
+     * @return
+     */
+    @GetMapping("/posts")
+    public ResponseEntity<CursorPage<PostSummary>> getPosts(@RequestParam(name = "order", defaultValue = "new") String order,
+                                                            @RequestParam(name = "cursor", required = false) String cursor,
+                                                            @RequestParam(name = "limit", defaultValue = "10") int limit) {
+        int orderMode;
+        if ("new".equals(order)) {
+            orderMode = 0;
+        } else if ("hot".equals(order)) {
+            orderMode = 1;
+        } else {
+            return ResponseEntity.badRequest().build();
+        }
+
+        DiscussPost after = null;
+        if (StringUtils.isNotBlank(cursor)) {
+            after = decodePostCursor(cursor, orderMode);
+            if (after == null) {
+                return ResponseEntity.badRequest().build();
+            }
+        }
+
+        // 多查一条，判断是否还有下一页
+        limit = Math.max(1, Math.min(limit, maxPageSize));
+        List<DiscussPost> list = discussPostService.findDiscussPostsAfter(after, limit + 1, orderMode);
+        String nextCursor = null;
+        if (list.size() > limit) {
+            list = list.subList(0, limit);
+            nextCursor = encodePostCursor(list.get(limit - 1), orderMode);
+        }
+
+        // 作者和点赞数量各只查询一次
+        Set<Integer> userIds = new HashSet<>();
+        List<Integer> postIds = new ArrayList<>();
+        for (DiscussPost post : list) {
+            userIds.add(post.getUserId());
+            postIds.add(post.getId());
+        }
+        Map<Integer, UserProfile> users = userService.findUserProfilesByIds(userIds);
+        Map<Integer, Long> likeCounts = likeService.findEntityLikeCounts(ENTITY_TYPE_POST, postIds);
+
+        List<PostSummary> items = new ArrayList<>();
+        StringBuilder version = new StringBuilder();
+        for (DiscussPost post : list) {
+            PostSummary item = new PostSummary(post, users.get(post.getUserId()), likeCounts.get(post.getId()));
+            items.add(item);
+            appendVersion(version, item);
+        }
+        version.append(nextCursor);
+
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(maxAgeSeconds, TimeUnit.SECONDS).cachePublic())
+                .eTag(etag(version))
+                .body(new CursorPage<>(items, nextCursor));
+    }
+
+    /**
+     * 帖子详情（不包含评论）
+     * @param postId
+     * @return
+     */
+    @GetMapping("/posts/{postId}")
+    public ResponseEntity<PostDetail> getPost(@PathVariable("postId") int postId) {
+        DiscussPost post = discussPostService.findDiscussPostById(postId);
+        if (post == null || post.getStatus() == 2) {
+            return ResponseEntity.notFound().build();
+        }
+
+        UserProfile author = userService.findUserProfileById(post.getUserId());
+        long likeCount = likeService.findEntityLikeCount(ENTITY_TYPE_POST, postId);
+        PostDetail detail = new PostDetail(post, author, likeCount);
+
+        StringBuilder version = new StringBuilder();
+        appendVersion(version, detail);
+        version.append(detail.getContentHtml() == null ? 0 : detail.getContentHtml().hashCode());
+
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(maxAgeSeconds, TimeUnit.SECONDS).cachePublic())
+                .eTag(etag(version))
+                .body(detail);
+    }
+
+    /**
+     * 帖子的评论列表，每条评论带有它的所有回复（与详情页相同，回复不分页）
+     * @param postId
+     * @param cursor 上一页返回的 nextCursor，不传时返回第一页
+     * @param limit 每页多少条评论
+     * @return
+     */
+    @GetMapping("/posts/{postId}/comments")
+    public ResponseEntity<CursorPage<CommentItem>> getComments(@PathVariable("postId") int postId,
+                                                               @RequestParam(name = "cursor", required = false) String cursor,
+                                                               @RequestParam(name = "limit", defaultValue = "10") int limit) {
+        DiscussPost post = discussPostService.findDiscussPostById(postId);
+        if (post == null || post.getStatus() == 2) {
+            return ResponseEntity.notFound().build();
+        }
+
+        Comment after = null;
+        if (StringUtils.isNotBlank(cursor)) {
+            after = decodeCommentCursor(cursor);
+            if (after == null) {
+                return ResponseEntity.badRequest().build();
+            }
+        }
+
+        limit = Math.max(1, Math.min(limit, maxPageSize));
+        List<Comment> comments = commentService.findCommentByEntityAfter(ENTITY_TYPE_POST, postId, after, limit + 1);
+        String nextCursor = null;
+        if (comments.size() > limit) {
+            comments = comments.subList(0, limit);
+            nextCursor = encodeCommentCursor(comments.get(limit - 1));
+        }
+
+        // 先一次查出所有回复，再一次性查询所有作者、目标用户和点赞数量
+        List<Integer> commentIds = new ArrayList<>();
+        for (Comment comment : comments) {
+            commentIds.add(comment.getId());
+        }
+        Map<Integer, List<Comment>> replyMap = commentService.findCommentByEntities(ENTITY_TYPE_COMMENT, commentIds);
+        Set<Integer> userIds = new HashSet<>();
+        for (Comment comment : comments) {
+            userIds.add(comment.getUserId());
+            for (Comment reply : replyMap.getOrDefault(comment.getId(), Collections.emptyList())) {
+                userIds.add(reply.getUserId());
+                if (reply.getTargetId() != 0) {
+                    userIds.add(reply.getTargetId());
+                }
+                commentIds.add(reply.getId());
+            }
+        }
+        Map<Integer, UserProfile> users = userService.findUserProfilesByIds(userIds);
+        Map<Integer, Long> likeCounts = likeService.findEntityLikeCounts(ENTITY_TYPE_COMMENT, commentIds);
+
+        List<CommentItem> items = new ArrayList<>();
+        StringBuilder version = new StringBuilder();
+        for (Comment comment : comments) {
+            CommentItem item = new CommentItem(comment, users.get(comment.getUserId()), likeCounts.get(comment.getId()));
+            appendVersion(version, item);
+            List<CommentItem> replyItems = new ArrayList<>();
+            for (Comment reply : replyMap.getOrDefault(comment.getId(), Collections.emptyList())) {
+                CommentItem replyItem = new CommentItem(reply, users.get(reply.getUserId()), likeCounts.get(reply.getId()));
+                if (reply.getTargetId() != 0) {
+                    replyItem.setTarget(users.get(reply.getTargetId()));
+                }
+                replyItems.add(replyItem);
+                appendVersion(version, replyItem);
+            }
+            item.setReplies(replyItems);
+            item.setReplyCount(replyItems.size());
+            items.add(item);
+        }
+        version.append(nextCursor);
+
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(maxAgeSeconds, TimeUnit.SECONDS).cachePublic())
+                .eTag(etag(version))
+                .body(new CursorPage<>(items, nextCursor));
+    }
+
+    /**
+     * 帖子的游标：排序方式和排序用到的字段（type、score、createTime、id），Base64 编码后对客户端不透明
+     * @param post
+     * @param orderMode
+     * @return
+     */
+    private String encodePostCursor(DiscussPost post, int orderMode) {
+        String cursor = orderMode + ":" + post.getType() + ":" + post.getScore() + ":"
+                + post.getCreateTime().getTime() + ":" + post.getId();
+        return encode(cursor);
+    }
+
+    /**
+     * 解析帖子的游标
+     * @param cursor
+     * @param orderMode 游标必须是同一种排序方式下生成的
+     * @return 格式错误时返回 null
+     */
+    private DiscussPost decodePostCursor(String cursor, int orderMode) {
+        String[] parts = decode(cursor, 5);
+        if (parts == null || !String.valueOf(orderMode).equals(parts[0])) {
+            return null;
+        }
+        try {
+            DiscussPost post = new DiscussPost();
+            post.setType(Integer.parseInt(parts[1]));
+            post.setScore(Double.parseDouble(parts[2]));
+            post.setCreateTime(new Date(Long.parseLong(parts[3])));
+            post.setId(Integer.parseInt(parts[4]));
+            return post;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private String encodeCommentCursor(Comment comment) {
+        return encode(comment.getCreateTime().getTime() + ":" + comment.getId());
+    }
+
+    private Comment decodeCommentCursor(String cursor) {
+        String[] parts = decode(cursor, 2);
+        if (parts == null) {
+            return null;
+        }
+        try {
+            Comment comment = new Comment();
+            comment.setCreateTime(new Date(Long.parseLong(parts[0])));
+            comment.setId(Integer.parseInt(parts[1]));
+            return comment;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private String encode(String cursor) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param cursor
+     * @param size 游标由几部分组成
+     * @return 格式错误时返回 null
+     */
+    private String[] decode(String cursor, int size) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":");
+            return parts.length == size ? parts : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 记录帖子中会变化的字段，用于计算 ETag
+     * @param version
+     * @param post
+     */
+    private void appendVersion(StringBuilder version, PostSummary post) {
+        version.append(post.getId()).append(':')
+                .append(post.getType()).append(':')
+                .append(post.getStatus()).append(':')
+                .append(post.getCommentCount()).append(':')
+                .append(post.getScore()).append(':')
+                .append(post.getLikeCount()).append(':');
+        appendVersion(version, post.getAuthor());
+    }
+
+    private void appendVersion(StringBuilder version, CommentItem comment) {
+        version.append(comment.getId()).append(':')
+                .append(comment.getLikeCount()).append(':');
+        appendVersion(version, comment.getAuthor());
+        appendVersion(version, comment.getTarget());
+    }
+
+    private void appendVersion(StringBuilder version, UserProfile user) {
+        if (user != null) {
+            version.append(user.getUsername()).append(':').append(user.getHeaderUrl());
+        }
+        version.append(';');
+    }
+
+    /**
+     * 弱 ETag：只表示内容相同，不保证字节相同
+     * @param version
+     * @return
+     */
+    private String etag(StringBuilder version) {
+        return "W/\"" + DigestUtils.md5DigestAsHex(version.toString().getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
+}
@@ -2,6 +2,7 @@ package com.ktf.community.controller;
 
 import com.ktf.community.entity.DiscussPost;
 import com.ktf.community.entity.Page;
+import com.ktf.community.entity.UserProfile;
 import com.ktf.community.service.ElasticsearchService;
 import com.ktf.community.service.LikeService;
 import com.ktf.community.service.UserService;
@@ -53,7 +54,7 @@ public class SearchController implements CommunityConstant {
                 // 帖子
                 map.put("post", post);
                 // 作者
-                map.put("user", userService.findUserById(post.getUserId()));
+                map.put("user", userService.findUserProfileById(post.getUserId()));
                 // 点赞数量
                 map.put("likeCount", likeService.findEntityLikeCount(ENTITY_TYPE_POST, post.getId()));
 
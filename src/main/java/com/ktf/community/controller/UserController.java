@@ -4,6 +4,7 @@ import com.ktf.community.entity.Comment;
 import com.ktf.community.entity.DiscussPost;
 import com.ktf.community.entity.Page;
 import com.ktf.community.entity.User;
+import com.ktf.community.entity.UserProfile;
 import com.ktf.community.service.*;
 import com.ktf.community.util.CommunityConstant;
 import com.ktf.community.util.CommunityUtil;
@@ -115,8 +116,8 @@ public class UserController implements CommunityConstant {
      */
     @PostMapping("/password")
     public String updatePassword(String oldPassword, String newPassword, Model model) {
-        // 验证原密码是否正确
-        User user = hostHolder.getUser();
+        // 验证原密码是否正确（当前登录用户的信息中不包含密码，重新查询）
+        User user = userService.findUserById(hostHolder.getUser().getId());
         String md5OldPassword = CommunityUtil.md5(oldPassword + user.getSalt());
         if (!user.getPassword().equals(md5OldPassword)) {
             model.addAttribute("oldPasswordError", "原密码错误");
@@ -143,7 +144,7 @@ public class UserController implements CommunityConstant {
      */
     @GetMapping("/profile/{userId}")
     public String getProfilePage(@PathVariable("userId") int userId, Model model) {
-        User user = userService.findUserById(userId);
+        UserProfile user = userService.findUserProfileById(userId);
         if (user == null) {
             throw new RuntimeException("该用户不存在");
         }
@@ -179,7 +180,7 @@ public class UserController implements CommunityConstant {
      */
     @GetMapping("/discuss/{userId}")
     public String getMyDiscussPosts(@PathVariable("userId") int userId, Page page, Model model) {
-        User user = userService.findUserById(userId);
+        UserProfile user = userService.findUserProfileById(userId);
         if (user == null) {
             throw new RuntimeException("该用户不存在");
         }
@@ -223,7 +224,7 @@ public class UserController implements CommunityConstant {
      */
     @GetMapping("/comment/{userId}")
     public String getMyComment(@PathVariable("userId") int userId,Page page, Model model) {
-        User user = userService.findUserById(userId);
+        UserProfile user = userService.findUserProfileById(userId);
         if (user == null) {
             throw new RuntimeException("该用户不存在");
         }
@@ -1,5 +1,6 @@
 package com.ktf.community.controller.advice;
 
+import com.ktf.community.controller.interceptor.RateLimitExceededException;
 import com.ktf.community.util.CommunityUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,7 +14,7 @@ import java.io.IOException;
 import java.io.PrintWriter;
 
 /**
- * 处理服务端异常（500）
+ * 处理服务端异常（500）、请求过于频繁（429）
  */
 // 扫描带有 @Controller 的组件
 @ControllerAdvice(annotations = Controller.class)
@@ -21,6 +22,28 @@ public class ExceptionAdvice {
 
     private static final Logger logger = LoggerFactory.getLogger(ExceptionAdvice.class);
 
+    /**
+     * 请求过于频繁，返回 429
+     * @param e
+     * @param request
+     * @param response
+     * @throws IOException
+     */
+    @ExceptionHandler({RateLimitExceededException.class})
+    public void handleRateLimitExceeded(RateLimitExceededException e, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setHeader("Retry-After", String.valueOf(e.getRetryAfterSeconds()));
+        String xRequestedWith = request.getHeader("x-requested-with");
+        if ("XMLHttpRequest".equals(xRequestedWith)) {
+            response.setStatus(429);
+            response.setContentType("application/plain;charset=utf-8");
+            PrintWriter writer = response.getWriter();
+            writer.write(CommunityUtil.getJSONString(1, e.getMessage()));
+        }
+        else {
+            response.sendError(429, e.getMessage());
+        }
+    }
+
     /**
      * 该注解用于修饰方法，在 Controller 出现异常后被调用，用于处理捕获到的异常
      * @param e
@@ -0,0 +1,226 @@
+package com.ktf.community.controller.filter;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.ktf.community.controller.interceptor.DataInterceptor;
+import com.ktf.community.util.CookieUtil;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+import org.springframework.web.util.UrlPathHelper;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 未登录用户访问的页面（首页、搜索、帖子详情）的 HTML 缓存
+ * 未登录用户看到的页面只与路径和参数有关，短时间内直接返回渲染好的 HTML，不执行 Controller 和模板渲染
+ * 请求中带有登录凭证（ticket）时不使用缓存
+ *
+ * 同时支持 ETag / Last-Modified：内容没有变化时返回 304，浏览器和代理可以低成本地重新验证
+ * 缓存命中时不经过拦截器，由这里调用 DataInterceptor 记录访问统计
+ */
+@Component
+public class PageCacheFilter extends OncePerRequestFilter {
+
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+    // 与 Spring MVC 匹配路由时使用相同的路径：不含应用的上下文路径，已解码，去掉了 ;jsessionid 等路径参数
+    private final UrlPathHelper urlPathHelper = new UrlPathHelper();
+
+    @Autowired
+    private DataInterceptor dataInterceptor;
+
+    // 缓存的路由，多个用逗号分隔
+    @Value("${community.page-cache.paths}")
+    private String pathsConfig;
+
+    // 页面的缓存时间（秒）
+    @Value("${community.page-cache.ttl-seconds}")
+    private int ttlSeconds;
+
+    // 缓存的页面总共最多占用多少字节
+    @Value("${community.page-cache.max-bytes}")
+    private long maxBytes;
+
+    private String[] paths;
+
+    // key - 路径（与匹配路由时使用的路径相同）和参数，value - 渲染好的页面
+    private Cache<String, CachedPage> pageCache;
+
+    @PostConstruct
+    public void init() {
+        paths = StringUtils.stripAll(StringUtils.split(pathsConfig, ','));
+        pageCache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String key, CachedPage page) -> key.length() * 2 + page.body.length)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * 只处理未登录用户对缓存路由的 GET 请求
+     * @param request
+     * @return
+     */
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        if (!"GET".equals(request.getMethod()) || CookieUtil.getValue(request, "ticket") != null) {
+            return true;
+        }
+        String path = urlPathHelper.getLookupPathForRequest(request);
+        for (String pattern : paths) {
+            if (pathMatcher.match(pattern, path)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String path = urlPathHelper.getLookupPathForRequest(request);
+        String key = request.getQueryString() == null ? path : path + "?" + request.getQueryString();
+
+        CachedPage page = pageCache.getIfPresent(key);
+        if (page != null) {
+            dataInterceptor.record(request, page.pattern, page.variables);
+            writeHeaders(response, page);
+            if (isNotModified(request, page)) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+            response.setContentType(page.contentType);
+            response.setContentLength(page.body.length);
+            response.getOutputStream().write(page.body);
+            return;
+        }
+
+        // 缓存中没有，正常处理请求，并保存渲染结果
+        ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+        filterChain.doFilter(request, wrapper);
+
+        if (isCacheable(wrapper)) {
+            page = new CachedPage(wrapper.getContentAsByteArray(), wrapper.getContentType(),
+                    (String) request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE),
+                    uriTemplateVariables(request));
+            pageCache.put(key, page);
+            writeHeaders(wrapper, page);
+            // 重新渲染的内容与浏览器中的相同
+            if (isNotModified(request, page)) {
+                wrapper.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+        }
+        wrapper.copyBodyToResponse();
+    }
+
+    /**
+     * 只缓存正常返回的 HTML 页面，设置了 cookie 的响应与用户有关，不缓存
+     * @param response
+     * @return
+     */
+    private boolean isCacheable(ContentCachingResponseWrapper response) {
+        return response.getStatus() == HttpServletResponse.SC_OK
+                && response.getContentType() != null
+                && response.getContentType().startsWith("text/html")
+                && response.getHeaders("Set-Cookie").isEmpty();
+    }
+
+    /**
+     * 请求匹配的路由中的变量（请求属性的类型是 Object，逐项转换，不做未检查的强制转换）
+     * @param request
+     * @return 没有匹配路由时返回 null
+     */
+    private Map<String, String> uriTemplateVariables(HttpServletRequest request) {
+        Object attribute = request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        if (!(attribute instanceof Map)) {
+            return null;
+        }
+        Map<String, String> variables = new HashMap<>();
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) attribute).entrySet()) {
+            variables.put(String.valueOf(entry.getKey()), String.valueOf(entry.getValue()));
+        }
+        return variables;
+    }
+
+    private void writeHeaders(HttpServletResponse response, CachedPage page) {
+        response.setHeader("ETag", page.etag);
+        response.setDateHeader("Last-Modified", page.lastModified);
+        // 可以缓存，但每次使用前都要重新验证；登录用户看到的页面不同，按 cookie 区分
+        response.setHeader("Cache-Control", "no-cache");
+        response.setHeader("Vary", "Cookie");
+    }
+
+    /**
+     * 浏览器中的页面是否与缓存的页面相同（优先比较 ETag）
+     * @param request
+     * @param page
+     * @return
+     */
+    private boolean isNotModified(HttpServletRequest request, CachedPage page) {
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            for (String etag : StringUtils.split(ifNoneMatch, ',')) {
+                etag = etag.trim();
+                if (etag.startsWith("W/")) {
+                    etag = etag.substring(2);
+                }
+                if (etag.equals(page.etag) || etag.equals("*")) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        try {
+            long ifModifiedSince = request.getDateHeader("If-Modified-Since");
+            return ifModifiedSince >= 0 && page.lastModified <= ifModifiedSince;
+        } catch (IllegalArgumentException e) {
+            // 格式错误的日期，当作没有这个请求头
+            return false;
+        }
+    }
+
+    /**
+     * 渲染好的页面
+     */
+    private static class CachedPage {
+
+        private final byte[] body;
+
+        private final String contentType;
+
+        private final String etag;
+
+        // 精确到秒（HTTP 日期的精度）
+        private final long lastModified;
+
+        // 请求匹配的路由和路由中的变量，用于记录访问统计
+        private final String pattern;
+
+        private final Map<String, String> variables;
+
+        CachedPage(byte[] body, String contentType, String pattern, Map<String, String> variables) {
+            this.body = body;
+            this.contentType = contentType;
+            this.etag = "\"" + DigestUtils.md5DigestAsHex(body) + "\"";
+            this.lastModified = System.currentTimeMillis() / 1000 * 1000;
+            this.pattern = pattern;
+            this.variables = variables;
+        }
+    }
+}
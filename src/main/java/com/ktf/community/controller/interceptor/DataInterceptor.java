@@ -6,14 +6,24 @@ import com.ktf.community.service.DataService;
 import com.ktf.community.util.HostHolder;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
 import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.util.Map;
 
+/**
+ * 收集网站的统计数据（UV、DAU、PV、帖子访客）
+ * 只记录在 DataService 的本地缓冲中，由后台线程定时写入 Redis，不会增加请求的耗时
+ */
 @Component
 public class DataInterceptor implements HandlerInterceptor {
 
+    // 帖子详情页的路由
+    private static final String POST_DETAIL_PATTERN = "/discuss/detail/{discussPostId}";
+
     @Autowired
     private DataService dataService;
 
@@ -22,6 +32,24 @@ public class DataInterceptor implements HandlerInterceptor {
 
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        // 只统计 Controller 处理的请求
+        if (!(handler instanceof HandlerMethod)) {
+            return true;
+        }
+
+        String pattern = (String) request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        Map<String, String> variables = (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        record(request, pattern, variables);
+        return true;
+    }
+
+    /**
+     * 记录一次请求（PageCacheFilter 直接返回缓存的页面时，请求不经过拦截器，也调用这个方法）
+     * @param request
+     * @param pattern 请求匹配的路由
+     * @param variables 路由中的变量
+     */
+    public void record(HttpServletRequest request, String pattern, Map<String, String> variables) {
         // 统计 UV
         String ip = request.getRemoteHost();
         dataService.recordUV(ip);
@@ -32,6 +60,18 @@ public class DataInterceptor implements HandlerInterceptor {
             dataService.recordDAU(user.getId());
         }
 
-        return true;
+        // 统计 PV：按路由统计（如 /discuss/detail/{discussPostId}），而不是按具体的路径，避免每个帖子一个字段
+        if (pattern == null) {
+            return;
+        }
+        dataService.recordPageView(pattern);
+
+        // 统计帖子访客：已登录用户按用户 id，未登录用户按 IP
+        if (POST_DETAIL_PATTERN.equals(pattern)) {
+            String postId = variables == null ? null : variables.get("discussPostId");
+            if (postId != null && postId.matches("\\d{1,9}")) {
+                dataService.recordPostView(Integer.parseInt(postId), user != null ? "user:" + user.getId() : "ip:" + ip);
+            }
+        }
     }
 }
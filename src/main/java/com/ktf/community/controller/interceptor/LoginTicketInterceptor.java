@@ -1,11 +1,25 @@
 package com.ktf.community.controller.interceptor;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.CacheWriter;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
 import com.ktf.community.entity.LoginTicket;
 import com.ktf.community.entity.User;
 import com.ktf.community.service.UserService;
 import com.ktf.community.util.CookieUtil;
 import com.ktf.community.util.HostHolder;
+import com.ktf.community.util.RedisKeyUtil;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.context.SecurityContextImpl;
@@ -13,16 +27,22 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.HandlerInterceptor;
 import org.springframework.web.servlet.ModelAndView;
 
+import javax.annotation.PostConstruct;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author github.com/kuangtf
  * @date 2021/9/6 18:48
  */
 @Component
-public class LoginTicketInterceptor implements HandlerInterceptor {
+public class LoginTicketInterceptor implements HandlerInterceptor, MessageListener {
 
     @Autowired
     private UserService userService;
@@ -30,6 +50,84 @@ public class LoginTicketInterceptor implements HandlerInterceptor {
     @Autowired
     private HostHolder hostHolder;
 
+    @Autowired
+    private RedisTemplate redisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Value("${caffeine.tickets.max-size}")
+    private int maxSize;
+
+    @Value("${caffeine.tickets.expire-seconds}")
+    private int expireSeconds;
+
+    // 登录凭证的本地缓存，命中时一次请求不需要访问 Redis
+    // key - ticket，value - 凭证对应的用户认证结果（用户信息中不包含密码、盐和激活码）
+    // 登出、修改密码、用户信息变更时通过 Redis 发布/订阅通知所有节点清除
+    // 通过 get(ticket, loader) 加载：加载期间收到的清除通知会等加载完成后再清除，不会把失效的凭证重新放入缓存
+    private Cache<String, UsernamePasswordAuthenticationToken> ticketCache;
+
+    // 每个用户在本地缓存中的凭证，用户信息变更时只清除该用户的凭证
+    // key - 用户 id，value - 凭证
+    private final Map<Integer, Set<String>> userTickets = new ConcurrentHashMap<>();
+
+    /**
+     * 初始化本地缓存，并订阅登录状态失效的通知
+     */
+    @PostConstruct
+    public void init() {
+        ticketCache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
+                // 凭证被清除、过期时从 userTickets 中删除（与删除缓存项同步进行，不会删掉之后重新加载时登记的凭证）
+                .writer(new CacheWriter<String, UsernamePasswordAuthenticationToken>() {
+                    @Override
+                    public void write(@NonNull String ticket, @NonNull UsernamePasswordAuthenticationToken authentication) {
+                    }
+
+                    @Override
+                    public void delete(@NonNull String ticket, @Nullable UsernamePasswordAuthenticationToken authentication, @NonNull RemovalCause cause) {
+                        if (authentication != null) {
+                            removeUserTicket(((User) authentication.getPrincipal()).getId(), ticket);
+                        }
+                    }
+                })
+                .build();
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(RedisKeyUtil.getLoginInvalidateChannel()));
+    }
+
+    /**
+     * 收到登录状态失效的通知，清除对应的本地缓存
+     * @param message ticket:凭证 或者 user:用户id
+     * @param pattern
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Object body = redisTemplate.getValueSerializer().deserialize(message.getBody());
+        if (body == null) {
+            return;
+        }
+        String content = body.toString();
+        if (content.startsWith("ticket:")) {
+            ticketCache.invalidate(content.substring("ticket:".length()));
+        }
+        else if (content.startsWith("user:")) {
+            int userId = Integer.parseInt(content.substring("user:".length()));
+            Set<String> tickets = userTickets.get(userId);
+            if (tickets != null) {
+                ticketCache.invalidateAll(new ArrayList<>(tickets));
+            }
+        }
+    }
+
+    private void removeUserTicket(int userId, String ticket) {
+        userTickets.computeIfPresent(userId, (id, tickets) -> {
+            tickets.remove(ticket);
+            return tickets.isEmpty() ? null : tickets;
+        });
+    }
+
     /**
      * 在 Controller 执行之前被调用
      * 检查凭证状态，若凭证有效则在本次请求中持有该用户信息
@@ -44,25 +142,44 @@ public class LoginTicketInterceptor implements HandlerInterceptor {
         // 从 cookie 中获取凭证
         String ticket = CookieUtil.getValue(request, "ticket");
         if (ticket != null) {
-            // 查询凭证
-            LoginTicket loginTicket = userService.findLoginTicket(ticket);
-            // 检查凭证状态（是否有效）以及是否过期
-            if (loginTicket != null && loginTicket.getStatus() == 0 && loginTicket.getExpired().after(new Date())) {
-                // 根据凭证查询用户
-                User user = userService.findUserById(loginTicket.getUserId());
+            // 优先查询本地缓存，未命中时加载（无效的凭证不会被缓存）
+            UsernamePasswordAuthenticationToken authentication = ticketCache.get(ticket, this::loadAuthentication);
+            if (authentication != null) {
                 // 在本次请求中持有用户信息
-                hostHolder.setUsers(user);
-
-                // 构建用户认证结果，并存入 SecurityContext，以便于 Spring Security 进行授权
-                UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
-                        user, user.getPassword(), userService.getAuthorities(user.getId())
-                );
+                hostHolder.setUsers((User) authentication.getPrincipal());
+                // 将用户认证结果存入 SecurityContext，以便于 Spring Security 进行授权
                 SecurityContextHolder.setContext(new SecurityContextImpl(authentication));
             }
         }
         return true;
     }
 
+    /**
+     * 查询凭证，并构建用户认证结果
+     * @param ticket
+     * @return 凭证无效或已过期时返回 null
+     */
+    private UsernamePasswordAuthenticationToken loadAuthentication(String ticket) {
+        // 查询凭证
+        LoginTicket loginTicket = userService.findLoginTicket(ticket);
+        // 检查凭证状态（是否有效）以及是否过期
+        if (loginTicket == null || loginTicket.getStatus() != 0 || !loginTicket.getExpired().after(new Date())) {
+            return null;
+        }
+        // 先登记凭证再查询用户：之后收到该用户的变更通知时，能找到这个凭证并清除
+        userTickets.computeIfAbsent(loginTicket.getUserId(), id -> ConcurrentHashMap.newKeySet()).add(ticket);
+        // 根据凭证查询用户
+        User user = userService.findUserById(loginTicket.getUserId());
+        if (user == null) {
+            removeUserTicket(loginTicket.getUserId(), ticket);
+            return null;
+        }
+        // 构建用户认证结果，缓存的用户信息中去掉密码、盐和激活码
+        User principal = new User();
+        BeanUtils.copyProperties(user, principal, "password", "salt", "activationCode");
+        return new UsernamePasswordAuthenticationToken(principal, null, userService.getAuthorities(user));
+    }
+
     /**
      * 在模板引擎之前被调用
      * 将用户信息存入 modelAndView，便于模板引擎调用
@@ -0,0 +1,19 @@
+package com.ktf.community.controller.interceptor;
+
+/**
+ * 请求过于频繁（由 ExceptionAdvice 处理，返回 429）
+ */
+public class RateLimitExceededException extends RuntimeException {
+
+    // 建议多少秒后重试
+    private final int retryAfterSeconds;
+
+    public RateLimitExceededException(String message, int retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,126 @@
+package com.ktf.community.controller.interceptor;
+
+import com.ktf.community.entity.User;
+import com.ktf.community.service.UserService;
+import com.ktf.community.util.HostHolder;
+import com.ktf.community.util.RateLimiter;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 限制写操作的请求频率（点赞、评论、发帖、私信、登录、验证码）
+ * 已登录用户按用户 id 计数，未登录用户按 IP 计数；不同角色的限额按倍数放宽
+ * 超过限制时抛出 RateLimitExceededException，由 ExceptionAdvice 返回 429
+ */
+@Component
+public class RateLimitInterceptor implements HandlerInterceptor {
+
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+    @Autowired
+    private RateLimiter rateLimiter;
+
+    @Autowired
+    private HostHolder hostHolder;
+
+    @Autowired
+    private UserService userService;
+
+    // 限流规则，格式：请求方法 路径 次数/秒数,...
+    @Value("${community.rate-limit.rules}")
+    private String rulesConfig;
+
+    // 各角色限额的倍数，格式：角色:倍数,...
+    @Value("${community.rate-limit.role-factors}")
+    private String roleFactorsConfig;
+
+    private List<Rule> rules = new ArrayList<>();
+
+    // key - 角色，value - 限额的倍数
+    private Map<String, Integer> roleFactors = new HashMap<>();
+
+    /**
+     * 解析配置的限流规则
+     */
+    @PostConstruct
+    public void init() {
+        for (String item : StringUtils.split(rulesConfig, ',')) {
+            String[] parts = StringUtils.split(item.trim());
+            String[] limit = StringUtils.split(parts[2], '/');
+            rules.add(new Rule(parts[0].toUpperCase(), parts[1], Integer.parseInt(limit[0]), Integer.parseInt(limit[1])));
+        }
+        for (String item : StringUtils.split(roleFactorsConfig, ',')) {
+            String[] pair = item.trim().split(":");
+            roleFactors.put(pair[0], Integer.parseInt(pair[1]));
+        }
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        Rule rule = match(request);
+        if (rule == null) {
+            return true;
+        }
+
+        // 限流对象：已登录用户按用户 id，未登录用户按 IP
+        User user = hostHolder.getUser();
+        int permits = rule.permits;
+        String subject;
+        if (user != null) {
+            subject = "user:" + user.getId();
+            String role = userService.getAuthorities(user).iterator().next().getAuthority();
+            permits *= roleFactors.getOrDefault(role, 1);
+        } else {
+            subject = "ip:" + request.getRemoteHost();
+        }
+
+        String key = rule.method + ":" + rule.pattern + ":" + subject;
+        if (!rateLimiter.tryAcquire(key, permits, rule.seconds)) {
+            throw new RateLimitExceededException("操作太频繁，请稍后再试", rule.seconds);
+        }
+        return true;
+    }
+
+    private Rule match(HttpServletRequest request) {
+        String path = request.getServletPath();
+        for (Rule rule : rules) {
+            if (rule.method.equals(request.getMethod()) && pathMatcher.match(rule.pattern, path)) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 限流规则：某个路由在 seconds 秒内最多允许 permits 次请求
+     */
+    private static class Rule {
+
+        private final String method;
+
+        private final String pattern;
+
+        private final int permits;
+
+        private final int seconds;
+
+        Rule(String method, String pattern, int permits, int seconds) {
+            this.method = method;
+            this.pattern = pattern;
+            this.permits = permits;
+            this.seconds = seconds;
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.ktf.community.dao;
 
 import com.ktf.community.entity.Comment;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -47,6 +48,24 @@ public interface CommentMapper {
      */
     List<Comment> selectCommentByEntity(int entityType, int entityId, int offset, int limit);
 
+    /**
+     * 根据评论目标（类别、id）按游标分页查询评论（JSON 接口使用）
+     * @param entityType 评论目标的类别（帖子、回复）
+     * @param entityId 评论目标的 id
+     * @param cursor 上一页的最后一条评论（只用到 createTime、id），为 null 时从第一页开始
+     * @param limit 查询多少条数据
+     * @return 排在 cursor 之后的评论
+     */
+    List<Comment> selectCommentByEntityAfter(int entityType, int entityId, Comment cursor, int limit);
+
+    /**
+     * 查询多个评论目标的所有评论（不分页），用于一次查出当前页所有评论的回复
+     * @param entityType 评论目标的类别
+     * @param entityIds 评论目标的 id
+     * @return 按照创建时间升序排序
+     */
+    List<Comment> selectCommentByEntities(@Param("entityType") int entityType, @Param("entityIds") List<Integer> entityIds);
+
     /**
      * 查询评论数量
      * @param entityType
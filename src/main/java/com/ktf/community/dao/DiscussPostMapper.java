@@ -30,10 +30,20 @@ public interface DiscussPostMapper {
      * @param offset 每页的起始索引
      * @param limit  每页显示多少条数据
      * @param orderMode 排行模式（若传入1，则按照热度来排行）
-     * @return 返回帖子列表
+     * @return 返回帖子列表（列表页不显示正文，不包含 content 和 content_html）
      */
     List<DiscussPost> selectDiscussPosts(int userId, int offset, int limit, int orderMode);
 
+    /**
+     * 按游标分页查询讨论帖信息（JSON 接口使用）：查询排在 cursor 之后的帖子，排序与 selectDiscussPosts 相同，最后按 id 区分
+     * 不使用 offset，翻到很靠后的页时也不需要扫描前面的行
+     * @param cursor 上一页的最后一个帖子（只用到 type、score、createTime、id），为 null 时从第一页开始
+     * @param limit 查询多少条数据
+     * @param orderMode 排行模式（若传入1，则按照热度来排行）
+     * @return 返回帖子列表（不包含 content 和 content_html）
+     */
+    List<DiscussPost> selectDiscussPostsAfter(DiscussPost cursor, int limit, int orderMode);
+
     /**
      * 根据 id 查询帖子
      * @param id 帖子 id
@@ -72,6 +82,14 @@ public interface DiscussPostMapper {
      */
     int updateCommentCount(int id, int commentCount);
 
+    /**
+     * 保存正文渲染后的 HTML
+     * @param id
+     * @param contentHtml
+     * @return
+     */
+    int updateContentHtml(int id, String contentHtml);
+
     /**
      * 修改帖子分数
      * @param id
@@ -1,9 +1,12 @@
 package com.ktf.community.dao;
 
 import com.ktf.community.entity.Message;
+import com.ktf.community.entity.NoticeSummary;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Date;
 import java.util.List;
 
 /**
@@ -104,21 +107,35 @@ public interface MessageMapper {
      * @return
      */
     List<Message> selectNotices(int userId, String topic, int offset, int limit);
-}
-
-
-
-
-
-
-
-
-
-
-
-
-
 
+    /**
+     * 一次查询出某个用户每个主题下最新的通知、通知数量以及未读通知数量
+     * @param userId
+     * @return 每个主题对应一条记录，没有通知的主题不返回
+     */
+    List<NoticeSummary> selectNoticeSummaries(int userId);
 
+    /**
+     * 查询可以归档的系统通知（已读且早于指定时间）
+     * @param before 早于该时间的通知才会被归档
+     * @param limit 每批最多查询多少条
+     * @return 通知的 id
+     */
+    List<Integer> selectArchivableNoticeIds(Date before, int limit);
 
+    /**
+     * 将指定的消息复制到归档表 message_archive 中
+     * @param ids
+     * @param before 与查询归档消息时的时间相同，用于裁剪分区
+     * @return
+     */
+    int insertArchiveMessages(@Param("ids") List<Integer> ids, @Param("before") Date before);
 
+    /**
+     * 从 message 表中物理删除指定的消息（归档之后调用）
+     * @param ids
+     * @param before 与查询归档消息时的时间相同，用于裁剪分区
+     * @return
+     */
+    int deleteMessages(@Param("ids") List<Integer> ids, @Param("before") Date before);
+}
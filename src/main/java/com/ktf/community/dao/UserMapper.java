@@ -2,8 +2,11 @@ package com.ktf.community.dao;
 
 import com.ktf.community.entity.User;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+
 /**
  * @author github.com/kuangtf
  * @date 2021/9/5 13:02
@@ -26,6 +29,14 @@ public interface UserMapper {
      */
     User selectByEmail(String email);
 
+    /**
+     * 分批查询 id 大于 afterId 的用户的 id、用户名、邮箱（按 id 升序）
+     * @param afterId
+     * @param limit
+     * @return
+     */
+    List<User> selectIdentities(@Param("afterId") int afterId, @Param("limit") int limit);
+
     /**
      * 插入用户（注册）
      * @param user
@@ -40,6 +51,13 @@ public interface UserMapper {
      */
     User selectById(int id);
 
+    /**
+     * 根据一组 id 批量查询用户
+     * @param ids
+     * @return
+     */
+    List<User> selectByIds(@Param("ids") List<Integer> ids);
+
     /**
      * 修改用户状态
      * @param id
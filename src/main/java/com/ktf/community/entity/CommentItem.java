@@ -0,0 +1,112 @@
+package com.ktf.community.entity;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 评论或回复（JSON 接口的评论列表）
+ * 评论带有它的回复和回复数量，回复带有回复的目标用户；没有的字段不输出
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CommentItem {
+
+    private int id;
+    private String content;  // 发表时转义过的文本
+    private Date createTime;
+    private long likeCount;
+    private UserProfile author;
+    private UserProfile target;  // 回复的目标用户（只有回复有）
+    private List<CommentItem> replies;  // 该评论的回复（只有评论有）
+    private Integer replyCount;
+
+    public CommentItem() {
+    }
+
+    public CommentItem(Comment comment, UserProfile author, long likeCount) {
+        this.id = comment.getId();
+        this.content = comment.getContent();
+        this.createTime = comment.getCreateTime();
+        this.likeCount = likeCount;
+        this.author = author;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public void setContent(String content) {
+        this.content = content;
+    }
+
+    public Date getCreateTime() {
+        return createTime;
+    }
+
+    public void setCreateTime(Date createTime) {
+        this.createTime = createTime;
+    }
+
+    public long getLikeCount() {
+        return likeCount;
+    }
+
+    public void setLikeCount(long likeCount) {
+        this.likeCount = likeCount;
+    }
+
+    public UserProfile getAuthor() {
+        return author;
+    }
+
+    public void setAuthor(UserProfile author) {
+        this.author = author;
+    }
+
+    public UserProfile getTarget() {
+        return target;
+    }
+
+    public void setTarget(UserProfile target) {
+        this.target = target;
+    }
+
+    public List<CommentItem> getReplies() {
+        return replies;
+    }
+
+    public void setReplies(List<CommentItem> replies) {
+        this.replies = replies;
+    }
+
+    public Integer getReplyCount() {
+        return replyCount;
+    }
+
+    public void setReplyCount(Integer replyCount) {
+        this.replyCount = replyCount;
+    }
+
+    @Override
+    public String toString() {
+        return "CommentItem{" +
+                "id=" + id +
+                ", content='" + content + '\'' +
+                ", createTime=" + createTime +
+                ", likeCount=" + likeCount +
+                ", author=" + author +
+                ", target=" + target +
+                ", replies=" + replies +
+                ", replyCount=" + replyCount +
+                '}';
+    }
+}
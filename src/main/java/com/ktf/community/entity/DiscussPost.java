@@ -1,6 +1,7 @@
 package com.ktf.community.entity;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
 import org.springframework.data.elasticsearch.annotations.Document;
 import org.springframework.data.elasticsearch.annotations.Field;
 import org.springframework.data.elasticsearch.annotations.FieldType;
@@ -26,6 +27,9 @@ public class DiscussPost {
     @Field(type = FieldType.Text, analyzer = "ik_max_word", searchAnalyzer = "ik_smart")
     private String content;
 
+    @Transient
+    private String contentHtml;   // 正文渲染后的 HTML（发帖时生成），不存入 Elasticsearch
+
     @Field(type = FieldType.Integer)
     private int type;   // 0 - 普通帖子（默认）   1 - 置顶帖子
 
@@ -73,6 +77,14 @@ public class DiscussPost {
         this.content = content;
     }
 
+    public String getContentHtml() {
+        return contentHtml;
+    }
+
+    public void setContentHtml(String contentHtml) {
+        this.contentHtml = contentHtml;
+    }
+
     public int getType() {
         return type;
     }
@@ -0,0 +1,73 @@
+package com.ktf.community.entity;
+
+/**
+ * 待发送的邮件（存放在 Redis 的发件队列中，由后台线程发送）
+ */
+public class MailTask {
+
+    private String id;  // 唯一标识，内容相同的邮件在重试集合中不会被合并
+    private String to;  // 收件人
+    private String subject;  // 主题
+    private String content;  // 内容（已渲染好的 HTML）
+    private int attempts;  // 已经尝试发送的次数
+
+    public MailTask() {
+    }
+
+    public MailTask(String id, String to, String subject, String content) {
+        this.id = id;
+        this.to = to;
+        this.subject = subject;
+        this.content = content;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getTo() {
+        return to;
+    }
+
+    public void setTo(String to) {
+        this.to = to;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public void setSubject(String subject) {
+        this.subject = subject;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public void setContent(String content) {
+        this.content = content;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    @Override
+    public String toString() {
+        return "MailTask{" +
+                "id='" + id + '\'' +
+                ", to='" + to + '\'' +
+                ", subject='" + subject + '\'' +
+                ", attempts=" + attempts +
+                '}';
+    }
+}
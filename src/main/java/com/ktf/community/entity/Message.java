@@ -11,6 +11,11 @@ public class Message {
     private String content;  // 会话内容
     private int status;  // 信息/系统通知的状态：0-未读 1-已读 2-删除
     private Date createTime;   //  会话创建时间
+    // 以下字段只对系统通知有效，私信均为 0
+    private int actorId;  // 触发通知的用户 id
+    private int entityType;  // 通知对应的实体类型
+    private int entityId;  // 通知对应的实体 id
+    private int postId;  // 通知对应的帖子 id（关注类通知为 0）
 
     public int getId() {
         return id;
@@ -68,6 +73,38 @@ public class Message {
         this.createTime = createTime;
     }
 
+    public int getActorId() {
+        return actorId;
+    }
+
+    public void setActorId(int actorId) {
+        this.actorId = actorId;
+    }
+
+    public int getEntityType() {
+        return entityType;
+    }
+
+    public void setEntityType(int entityType) {
+        this.entityType = entityType;
+    }
+
+    public int getEntityId() {
+        return entityId;
+    }
+
+    public void setEntityId(int entityId) {
+        this.entityId = entityId;
+    }
+
+    public int getPostId() {
+        return postId;
+    }
+
+    public void setPostId(int postId) {
+        this.postId = postId;
+    }
+
     @Override
     public String toString() {
         return "Message{" +
@@ -78,6 +115,10 @@ public class Message {
                 ", content='" + content + '\'' +
                 ", status=" + status +
                 ", createTime=" + createTime +
+                ", actorId=" + actorId +
+                ", entityType=" + entityType +
+                ", entityId=" + entityId +
+                ", postId=" + postId +
                 '}';
     }
 }
@@ -0,0 +1,55 @@
+package com.ktf.community.entity;
+
+/**
+ * 某个主题下系统通知的概览（用于系统通知列表页）
+ * 由一条聚合查询得到：最新的通知、通知数量、未读通知数量
+ */
+public class NoticeSummary {
+
+    private String topic;  // 通知主题：comment、like、follow
+    private int count;  // 该主题下的通知数量
+    private int unreadCount;  // 该主题下未读的通知数量
+    private Message latestNotice;  // 该主题下最新的一条通知
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public void setTopic(String topic) {
+        this.topic = topic;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public void setCount(int count) {
+        this.count = count;
+    }
+
+    public int getUnreadCount() {
+        return unreadCount;
+    }
+
+    public void setUnreadCount(int unreadCount) {
+        this.unreadCount = unreadCount;
+    }
+
+    public Message getLatestNotice() {
+        return latestNotice;
+    }
+
+    public void setLatestNotice(Message latestNotice) {
+        this.latestNotice = latestNotice;
+    }
+
+    @Override
+    public String toString() {
+        return "NoticeSummary{" +
+                "topic='" + topic + '\'' +
+                ", count=" + count +
+                ", unreadCount=" + unreadCount +
+                ", latestNotice=" + latestNotice +
+                '}';
+    }
+}
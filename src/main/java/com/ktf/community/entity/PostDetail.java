@@ -0,0 +1,26 @@
+package com.ktf.community.entity;
+
+/**
+ * 帖子详情（JSON 接口）：在概览的基础上加上发帖时渲染好的正文 HTML
+ * 评论通过单独的接口分页获取
+ */
+public class PostDetail extends PostSummary {
+
+    private String contentHtml;
+
+    public PostDetail() {
+    }
+
+    public PostDetail(DiscussPost post, UserProfile author, long likeCount) {
+        super(post, author, likeCount);
+        this.contentHtml = post.getContentHtml();
+    }
+
+    public String getContentHtml() {
+        return contentHtml;
+    }
+
+    public void setContentHtml(String contentHtml) {
+        this.contentHtml = contentHtml;
+    }
+}
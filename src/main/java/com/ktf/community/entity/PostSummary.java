@@ -0,0 +1,122 @@
+package com.ktf.community.entity;
+
+import java.util.Date;
+
+/**
+ * 帖子概览（JSON 接口的帖子列表）
+ * 标题是发帖时转义过的文本，可以直接作为 HTML 显示
+ */
+public class PostSummary {
+
+    private int id;
+    private String title;
+    private int type;  // 0 - 普通帖子   1 - 置顶帖子
+    private int status;  // 0：正常  1：精华
+    private Date createTime;
+    private int commentCount;
+    private double score;
+    private long likeCount;
+    private UserProfile author;
+
+    public PostSummary() {
+    }
+
+    public PostSummary(DiscussPost post, UserProfile author, long likeCount) {
+        this.id = post.getId();
+        this.title = post.getTitle();
+        this.type = post.getType();
+        this.status = post.getStatus();
+        this.createTime = post.getCreateTime();
+        this.commentCount = post.getCommentCount();
+        this.score = post.getScore();
+        this.likeCount = likeCount;
+        this.author = author;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public void setType(int type) {
+        this.type = type;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
+    public Date getCreateTime() {
+        return createTime;
+    }
+
+    public void setCreateTime(Date createTime) {
+        this.createTime = createTime;
+    }
+
+    public int getCommentCount() {
+        return commentCount;
+    }
+
+    public void setCommentCount(int commentCount) {
+        this.commentCount = commentCount;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    public void setScore(double score) {
+        this.score = score;
+    }
+
+    public long getLikeCount() {
+        return likeCount;
+    }
+
+    public void setLikeCount(long likeCount) {
+        this.likeCount = likeCount;
+    }
+
+    public UserProfile getAuthor() {
+        return author;
+    }
+
+    public void setAuthor(UserProfile author) {
+        this.author = author;
+    }
+
+    @Override
+    public String toString() {
+        return "PostSummary{" +
+                "id=" + id +
+                ", title='" + title + '\'' +
+                ", type=" + type +
+                ", status=" + status +
+                ", createTime=" + createTime +
+                ", commentCount=" + commentCount +
+                ", score=" + score +
+                ", likeCount=" + likeCount +
+                ", author=" + author +
+                '}';
+    }
+}
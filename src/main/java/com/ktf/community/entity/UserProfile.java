@@ -0,0 +1,79 @@
+package com.ktf.community.entity;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * 用户的公开信息（用于展示其他用户：帖子作者、评论者、关注列表等）
+ * 只包含页面需要的字段，不包含密码、盐、邮箱、激活码等敏感信息
+ */
+public class UserProfile implements Serializable {
+
+    private int id;
+    private String username;
+    private int type;  // 0:普通用户  1：超级管理员   2：版主
+    private String headerUrl;
+    private Date createTime;
+
+    public UserProfile() {
+    }
+
+    public UserProfile(User user) {
+        this.id = user.getId();
+        this.username = user.getUsername();
+        this.type = user.getType();
+        this.headerUrl = user.getHeaderUrl();
+        this.createTime = user.getCreateTime();
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public void setType(int type) {
+        this.type = type;
+    }
+
+    public String getHeaderUrl() {
+        return headerUrl;
+    }
+
+    public void setHeaderUrl(String headerUrl) {
+        this.headerUrl = headerUrl;
+    }
+
+    public Date getCreateTime() {
+        return createTime;
+    }
+
+    public void setCreateTime(Date createTime) {
+        this.createTime = createTime;
+    }
+
+    @Override
+    public String toString() {
+        return "UserProfile{" +
+                "id=" + id +
+                ", username='" + username + '\'' +
+                ", type=" + type +
+                ", headerUrl='" + headerUrl + '\'' +
+                ", createTime=" + createTime +
+                '}';
+    }
+}
@@ -59,7 +59,16 @@ public class EventConsumer implements CommunityConstant {
         message.setToId(event.getEntityUserId());
         message.setConversationId(event.getTopic());
         message.setCreateTime(new Date());
+        // 通知的结构化信息，渲染通知时直接读取这些字段
+        message.setActorId(event.getUserId());
+        message.setEntityType(event.getEntityType());
+        message.setEntityId(event.getEntityId());
+        Object postId = event.getData().get("postId");
+        if (postId instanceof Integer) {
+            message.setPostId((Integer) postId);
+        }
 
+        // 通知内容仍然保留一份 JSON，兼容尚未升级的节点
         Map<String, Object> content = new HashMap<>();
         content.put("userId", event.getUserId());
         content.put("entityType", event.getEntityType());
@@ -90,7 +99,8 @@ public class EventConsumer implements CommunityConstant {
             return ;
         }
 
-        DiscussPost post = discussPostService.findDiscussPostById(event.getEntityId());
+        // 交给 Elasticsearch 保存的使用副本，不把缓存中共享的对象交出去
+        DiscussPost post = discussPostService.findDiscussPostCopyById(event.getEntityId());
         elasticsearchService.saveDiscussPost(post);
 
     }
@@ -0,0 +1,35 @@
+package com.ktf.community.quartz;
+
+import com.ktf.community.service.DataService;
+import org.quartz.Job;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+
+import java.time.LocalDate;
+
+/**
+ * 生成 UV、DAU 的周、月汇总
+ * 区间统计时整周、整月直接使用汇总 key，一年的区间只需要合并十几个 key
+ */
+public class DataRollupJob implements Job {
+
+    private static final Logger logger = LoggerFactory.getLogger(DataRollupJob.class);
+
+    @Autowired
+    private DataService dataService;
+
+    // 向前补充生成多少个月的汇总（已经生成的会跳过）
+    @Value("${community.data.rollup-backfill-months}")
+    private int backfillMonths;
+
+    @Override
+    public void execute(JobExecutionContext jobExecutionContext) throws JobExecutionException {
+        logger.info("[任务开始] 正在生成 UV、DAU 的周、月汇总");
+        int built = dataService.buildRollups(LocalDate.now(), backfillMonths);
+        logger.info("[任务结束] 汇总生成完毕: " + built);
+    }
+}
@@ -0,0 +1,47 @@
+package com.ktf.community.quartz;
+
+import com.ktf.community.service.MessageService;
+import org.quartz.Job;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+
+import java.util.Date;
+
+/**
+ * 系统通知归档
+ * 将已读且超过指定天数的系统通知移动到归档表，让 message 表只保留最近的热数据
+ * message 表的分区由运维提前创建（见 sql/message_archive.sql），应用不执行 DDL
+ */
+public class MessageArchiveJob implements Job {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageArchiveJob.class);
+
+    @Autowired
+    private MessageService messageService;
+
+    // 已读通知保留的天数
+    @Value("${community.message.archive.days}")
+    private int archiveDays;
+
+    // 每批归档的数量（每批一个事务，避免长事务）
+    @Value("${community.message.archive.batch-size}")
+    private int batchSize;
+
+    @Override
+    public void execute(JobExecutionContext jobExecutionContext) throws JobExecutionException {
+        Date before = new Date(System.currentTimeMillis() - archiveDays * 24L * 3600 * 1000);
+
+        logger.info("[任务开始] 正在归档 " + archiveDays + " 天前的已读通知");
+        int total = 0;
+        int rows;
+        do {
+            rows = messageService.archiveNotices(before, batchSize);
+            total += rows;
+        } while (rows > 0);
+        logger.info("[任务结束] 通知归档完毕: " + total);
+    }
+}
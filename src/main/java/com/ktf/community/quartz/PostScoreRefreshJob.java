@@ -72,7 +72,8 @@ public class PostScoreRefreshJob implements Job, CommunityConstant {
      * @param postId
      */
     private void refresh(int postId) {
-        DiscussPost post = discussPostService.findDiscussPostById(postId);
+        // 需要修改分数后同步到搜索服务器，使用副本，不修改缓存中共享的对象
+        DiscussPost post = discussPostService.findDiscussPostCopyById(postId);
 
         if (post == null) {
             logger.error("该帖子不存在: id = " + postId);
@@ -0,0 +1,28 @@
+package com.ktf.community.quartz;
+
+import com.ktf.community.util.UserBloomFilter;
+import org.quartz.Job;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * 重建用户名和邮箱的布隆过滤器
+ * 补上不经过注册写入的用户，并清除写入失败的记录（有记录时注册检查不使用过滤器）
+ */
+public class UserBloomRebuildJob implements Job {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserBloomRebuildJob.class);
+
+    @Autowired
+    private UserBloomFilter userBloomFilter;
+
+    @Override
+    public void execute(JobExecutionContext jobExecutionContext) throws JobExecutionException {
+        logger.info("[任务开始] 正在重建用户布隆过滤器");
+        userBloomFilter.rebuild();
+        logger.info("[任务结束] 用户布隆过滤器重建完毕");
+    }
+}
@@ -9,9 +9,11 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.util.HtmlUtils;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author github.com/kuangtf
@@ -71,6 +73,35 @@ public class CommentService implements CommunityConstant {
         return commentMapper.selectCommentByEntity(entityType, entityId, offset, limit);
     }
 
+    /**
+     * 根据评论目标（类别、id）按游标分页查询评论
+     * @param entityType
+     * @param entityId
+     * @param cursor 上一页的最后一条评论，为 null 时从第一页开始
+     * @param limit
+     * @return
+     */
+    public List<Comment> findCommentByEntityAfter(int entityType, int entityId, Comment cursor, int limit) {
+        return commentMapper.selectCommentByEntityAfter(entityType, entityId, cursor, limit);
+    }
+
+    /**
+     * 查询多个评论目标的所有评论（一次查出当前页所有评论的回复）
+     * @param entityType
+     * @param entityIds
+     * @return key - 评论目标的 id，value - 该目标的评论（按照创建时间升序），没有评论的目标不在其中
+     */
+    public Map<Integer, List<Comment>> findCommentByEntities(int entityType, List<Integer> entityIds) {
+        Map<Integer, List<Comment>> comments = new HashMap<>();
+        if (entityIds == null || entityIds.isEmpty()) {
+            return comments;
+        }
+        for (Comment comment : commentMapper.selectCommentByEntities(entityType, entityIds)) {
+            comments.computeIfAbsent(comment.getEntityId(), k -> new ArrayList<>()).add(comment);
+        }
+        return comments;
+    }
+
     /**
      * 查询评论数量
      * @param entityType
@@ -98,10 +129,8 @@ public class CommentService implements CommunityConstant {
             throw new IllegalArgumentException("参数不能为空");
         }
 
-        // HTML 标签转义
-        comment.setContent(HtmlUtils.htmlEscape(comment.getContent()));
-        // 敏感词过滤
-        comment.setContent(sensitiveFilter.filter(comment.getContent()));
+        // HTML 标签转义、敏感词过滤
+        comment.setContent(sensitiveFilter.sanitize(comment.getContent()));
 
         // 添加评论
         int rows = commentMapper.insertComment(comment);
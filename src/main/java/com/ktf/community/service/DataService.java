@@ -1,19 +1,38 @@
 package com.ktf.community.service;
 
 import com.ktf.community.util.RedisKeyUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataAccessException;
 import org.springframework.data.redis.connection.RedisConnection;
 import org.springframework.data.redis.connection.RedisStringCommands;
 import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.stereotype.Service;
 
-import java.text.SimpleDateFormat;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAdjusters;
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 /**
  * @author github.com/kuangtf
@@ -22,30 +41,111 @@ import java.util.List;
 @Service
 public class DataService {
 
+    private static final Logger logger = LoggerFactory.getLogger(DataService.class);
+
+    // DateTimeFormatter 是线程安全的，可以共用
+    private static final DateTimeFormatter DAY_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    private static final DateTimeFormatter MONTH_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM");
+
     @Autowired
     private RedisTemplate redisTemplate;
 
-    private SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd");
+    // 统计数据写入 Redis 的间隔
+    @Value("${community.data.flush-interval-ms}")
+    private long flushIntervalMs;
+
+    // 包含今天的区间统计结果的缓存时间（秒）
+    @Value("${community.data.range-cache-seconds}")
+    private long currentRangeCacheSeconds;
+
+    // 历史区间统计结果的缓存时间（秒）
+    @Value("${community.data.history-range-cache-seconds}")
+    private long historyRangeCacheSeconds;
+
+    // 帖子每日访客保留的天数
+    @Value("${community.data.post-view-days}")
+    private int postViewDays;
+
+    // 当天的日期，由定时任务更新，记录 UV、DAU 时不需要每次格式化日期
+    private volatile String today = LocalDate.now().format(DAY_FORMATTER);
+
+    // 以下等待写入 Redis 的数据，value 只在 compute / merge 中修改，写入时用 remove 整个取出
+    // 取出之后不会再有线程修改它，不会丢失取出期间（包括跨天时）记录的数据
+
+    // 等待写入 Redis 的 UV，key - 日期，value - 该日期的 IP（去重）
+    private final Map<String, Set<String>> pendingIps = new ConcurrentHashMap<>();
 
+    // 等待写入 Redis 的 DAU，key - 日期，value - 该日期的用户 id（去重）
+    private final Map<String, Set<Integer>> pendingUserIds = new ConcurrentHashMap<>();
+
+    // 等待写入 Redis 的 PV，key - 日期，value - (key - 路由，value - 访问次数)
+    private final Map<String, Map<String, Long>> pendingPageViews = new ConcurrentHashMap<>();
+
+    // 等待写入 Redis 的帖子访客，key - 日期，value - (key - 帖子 id，value - 访客)
+    private final Map<String, Map<Integer, Set<String>>> pendingPostViews = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService flusher;
+
+    /**
+     * 启动统计数据的定时写入
+     */
+    @PostConstruct
+    public void init() {
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "data-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 关闭前将剩余的统计数据写入 Redis
+     */
+    @PreDestroy
+    public void destroy() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(flushIntervalMs * 2, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    private LocalDate toLocalDate(Date date) {
+        return date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+
+    private String format(Date date) {
+        return toLocalDate(date).format(DAY_FORMATTER);
+    }
+
+    /**
+     * 统计指定日期范围内的 UV
+     * 结果保存在区间 key 中并设置过期时间，过期前再次查询同一区间直接读取
+     * @param start
+     * @param end
+     * @return
+     */
     public long calculateUV(Date start, Date end) {
         if (start == null || end == null) {
             throw new IllegalArgumentException("参数不能为空");
         }
-
-        // 整理该日期范围内的 key
-        List<String> keyList = new ArrayList<>();
-        Calendar calendar = Calendar.getInstance();
-        calendar.setTime(start);
-        while (!calendar.getTime().after(end)) {
-            String key = RedisKeyUtil.getUVKey(df.format(calendar.getTime()));
-            keyList.add(key);
-            // 加一天
-            calendar.add(Calendar.DATE, 1);
+        LocalDate from = toLocalDate(start);
+        LocalDate to = toLocalDate(end);
+        if (from.isAfter(to)) {
+            return 0;
         }
 
-        // 合并这些天的 UV
-        String redisKey = RedisKeyUtil.getUVKey(df.format(start), df.format(end));
-        redisTemplate.opsForHyperLogLog().union(redisKey, keyList.toArray());
+        String redisKey = RedisKeyUtil.getUVKey(from.format(DAY_FORMATTER), to.format(DAY_FORMATTER));
+        if (!isCached(redisKey)) {
+            // 用尽量少的周、月汇总 key 和单日 key 组成该区间，再合并
+            List<String> keyList = composeKeys(from, to, RedisKeyUtil::getUVKey, RedisKeyUtil::getUVWeekKey, RedisKeyUtil::getUVMonthKey);
+            redisTemplate.opsForHyperLogLog().union(redisKey, keyList.toArray());
+            redisTemplate.expire(redisKey, rangeCacheSeconds(to), TimeUnit.SECONDS);
+        }
 
         // 返回统计结果
         return redisTemplate.opsForHyperLogLog().size(redisKey);
@@ -53,6 +153,7 @@ public class DataService {
 
     /**
      * 统计指定日期范围内的 DAU
+     * 结果保存在区间 key 中并设置过期时间，过期前再次查询同一区间直接读取
      * @param start
      * @param end
      * @return
@@ -61,62 +162,360 @@ public class DataService {
         if (start == null || end == null) {
             throw new IllegalArgumentException("参数不能为空");
         }
-
-        // 整理该日期内的 key
-        List<byte[]> keyList = new ArrayList<>();
-        Calendar calendar = Calendar.getInstance();
-        calendar.setTime(start);
-        while (!calendar.getTime().after(end)) {
-            String key = RedisKeyUtil.getDAUKey(df.format(calendar.getTime()));
-            keyList.add(key.getBytes());
-            // 加一天
-            calendar.add(Calendar.DATE, 1);
+        LocalDate from = toLocalDate(start);
+        LocalDate to = toLocalDate(end);
+        if (from.isAfter(to)) {
+            return 0;
         }
 
-        //进行 or 运算
+        String redisKey = RedisKeyUtil.getDAUKey(from.format(DAY_FORMATTER), to.format(DAY_FORMATTER));
+        boolean cached = isCached(redisKey);
+        // 用尽量少的周、月汇总 key 和单日 key 组成该区间
+        List<String> keyList = cached ? null : composeKeys(from, to, RedisKeyUtil::getDAUKey, RedisKeyUtil::getDAUWeekKey, RedisKeyUtil::getDAUMonthKey);
+        long seconds = rangeCacheSeconds(to);
+
+        // 进行 or 运算
         return (long) redisTemplate.execute(new RedisCallback() {
             @Override
             public Object doInRedis(RedisConnection redisConnection) throws DataAccessException {
-                String redisKey = RedisKeyUtil.getDAUKey(df.format(start), df.format(end));
-                redisConnection.bitOp(RedisStringCommands.BitOperation.OR,
-                        redisKey.getBytes(), keyList.toArray(new byte[0][0]));
-                return redisConnection.bitCount(redisKey.getBytes());
+                byte[] rawKey = redisKey.getBytes();
+                if (!cached) {
+                    redisConnection.bitOp(RedisStringCommands.BitOperation.OR, rawKey, toRawKeys(keyList));
+                    redisConnection.expire(rawKey, seconds);
+                }
+                return redisConnection.bitCount(rawKey);
             }
         });
     }
 
     /**
-     * 将指定的 IP 计入当天的 UV
-     * @param ip
+     * 生成最近的周、月汇总 key（已经存在的跳过）
+     * 汇总 key 只为已经结束的周、月生成，生成后不再变化，不设置过期时间
+     * @param today
+     * @param backfillMonths 向前补充生成多少个月
+     * @return 本次生成的汇总 key 数量
      */
-    public void recordUV(String ip) {
-        String redisKey = RedisKeyUtil.getUVKey(df.format(new Date()));
-        redisTemplate.opsForHyperLogLog().add(redisKey, ip);
+    public int buildRollups(LocalDate today, int backfillMonths) {
+        int built = 0;
+        LocalDate thisWeek = today.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        LocalDate thisMonth = today.withDayOfMonth(1);
+        LocalDate earliest = thisMonth.minusMonths(backfillMonths);
+
+        // 一次查询出所有汇总 key 是否已经存在
+        List<String> candidates = new ArrayList<>();
+        for (LocalDate week = thisWeek.minusWeeks(1); !week.isBefore(earliest); week = week.minusWeeks(1)) {
+            String day = week.format(DAY_FORMATTER);
+            candidates.add(RedisKeyUtil.getUVWeekKey(day));
+            candidates.add(RedisKeyUtil.getDAUWeekKey(day));
+        }
+        for (LocalDate month = thisMonth.minusMonths(1); !month.isBefore(earliest); month = month.minusMonths(1)) {
+            String name = month.format(MONTH_FORMATTER);
+            candidates.add(RedisKeyUtil.getUVMonthKey(name));
+            candidates.add(RedisKeyUtil.getDAUMonthKey(name));
+        }
+        Set<String> existing = existingKeys(candidates);
+
+        for (LocalDate week = thisWeek.minusWeeks(1); !week.isBefore(earliest); week = week.minusWeeks(1)) {
+            String day = week.format(DAY_FORMATTER);
+            built += buildRollup(RedisKeyUtil.getUVWeekKey(day), RedisKeyUtil.getDAUWeekKey(day), week, week.plusDays(6), existing);
+        }
+        for (LocalDate month = thisMonth.minusMonths(1); !month.isBefore(earliest); month = month.minusMonths(1)) {
+            String name = month.format(MONTH_FORMATTER);
+            built += buildRollup(RedisKeyUtil.getUVMonthKey(name), RedisKeyUtil.getDAUMonthKey(name), month,
+                    month.with(TemporalAdjusters.lastDayOfMonth()), existing);
+        }
+        return built;
     }
 
     /**
-     * 将指定的 IP 计入当天的 DAU
-     * @param userId
+     * 将一段日期的单日数据合并成一个汇总 key
+     * @param existing 已经存在的汇总 key
+     * @return 生成了返回 1，已经存在返回 0
      */
-    public void recordDAU(int userId) {
-        String redisKey = RedisKeyUtil.getDAUKey(df.format(new Date()));
-        redisTemplate.opsForValue().setBit(redisKey, userId, true);
+    private int buildRollup(String uvKey, String dauKey, LocalDate from, LocalDate to, Set<String> existing) {
+        if (existing.contains(uvKey) && existing.contains(dauKey)) {
+            return 0;
+        }
+        List<String> uvKeys = new ArrayList<>();
+        List<String> dauKeys = new ArrayList<>();
+        for (LocalDate date = from; !date.isAfter(to); date = date.plusDays(1)) {
+            uvKeys.add(RedisKeyUtil.getUVKey(date.format(DAY_FORMATTER)));
+            dauKeys.add(RedisKeyUtil.getDAUKey(date.format(DAY_FORMATTER)));
+        }
+        redisTemplate.opsForHyperLogLog().union(uvKey, uvKeys.toArray());
+        redisTemplate.execute((RedisCallback) redisConnection -> {
+            byte[] rawKey = dauKey.getBytes();
+            redisConnection.bitOp(RedisStringCommands.BitOperation.OR, rawKey, toRawKeys(dauKeys));
+            // 这段时间没有任何活跃用户时 BITOP 不会生成 key，写入一个空字节表示已经汇总过
+            if (!Boolean.TRUE.equals(redisConnection.exists(rawKey))) {
+                redisConnection.setBit(rawKey, 0, false);
+            }
+            return null;
+        });
+        return 1;
     }
-}
-
-
 
+    /**
+     * 用尽量少的 key 组成一个日期区间：能用整月的用月汇总，能用整周的用周汇总，其余用单日
+     * 只使用已经生成的汇总 key，汇总 key 还没生成时退回到单日 key
+     */
+    private List<String> composeKeys(LocalDate from, LocalDate to, Function<String, String> dayKey,
+                                     Function<String, String> weekKey, Function<String, String> monthKey) {
+        // 先列出区间内所有完整的周、月，一次查询出已经生成的汇总 key
+        List<String> candidates = new ArrayList<>();
+        for (LocalDate date = from; !date.isAfter(to); date = date.plusDays(1)) {
+            if (date.getDayOfMonth() == 1 && !date.with(TemporalAdjusters.lastDayOfMonth()).isAfter(to)) {
+                candidates.add(monthKey.apply(date.format(MONTH_FORMATTER)));
+            }
+            if (date.getDayOfWeek() == DayOfWeek.MONDAY && !date.plusDays(6).isAfter(to)) {
+                candidates.add(weekKey.apply(date.format(DAY_FORMATTER)));
+            }
+        }
+        Set<String> existing = existingKeys(candidates);
 
+        List<String> keyList = new ArrayList<>();
+        LocalDate date = from;
+        while (!date.isAfter(to)) {
+            if (date.getDayOfMonth() == 1) {
+                LocalDate monthEnd = date.with(TemporalAdjusters.lastDayOfMonth());
+                String key = monthKey.apply(date.format(MONTH_FORMATTER));
+                if (!monthEnd.isAfter(to) && existing.contains(key)) {
+                    keyList.add(key);
+                    date = monthEnd.plusDays(1);
+                    continue;
+                }
+            }
+            if (date.getDayOfWeek() == DayOfWeek.MONDAY) {
+                LocalDate weekEnd = date.plusDays(6);
+                String key = weekKey.apply(date.format(DAY_FORMATTER));
+                if (!weekEnd.isAfter(to) && existing.contains(key)) {
+                    keyList.add(key);
+                    date = weekEnd.plusDays(1);
+                    continue;
+                }
+            }
+            keyList.add(dayKey.apply(date.format(DAY_FORMATTER)));
+            date = date.plusDays(1);
+        }
+        return keyList;
+    }
 
+    /**
+     * 通过一次 pipeline 查询哪些 key 已经存在
+     * @param keyList
+     * @return 已经存在的 key
+     */
+    private Set<String> existingKeys(List<String> keyList) {
+        Set<String> existing = new HashSet<>();
+        if (keyList.isEmpty()) {
+            return existing;
+        }
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) redisConnection -> {
+            for (String key : keyList) {
+                redisConnection.exists(key.getBytes());
+            }
+            return null;
+        });
+        for (int i = 0; i < keyList.size(); i++) {
+            if (Boolean.TRUE.equals(results.get(i))) {
+                existing.add(keyList.get(i));
+            }
+        }
+        return existing;
+    }
 
+    /**
+     * 区间结果是否已经缓存（以前的版本生成的区间 key 没有过期时间，视为没有缓存，重新计算）
+     * @param redisKey
+     * @return
+     */
+    private boolean isCached(String redisKey) {
+        Long ttl = redisTemplate.getExpire(redisKey);
+        return ttl != null && ttl > 0;
+    }
 
+    /**
+     * 区间结果的缓存时间：包含今天的区间数据还在变化，只缓存很短的时间
+     * @param to
+     * @return
+     */
+    private long rangeCacheSeconds(LocalDate to) {
+        return to.isBefore(LocalDate.now()) ? historyRangeCacheSeconds : currentRangeCacheSeconds;
+    }
 
+    private byte[][] toRawKeys(List<String> keyList) {
+        byte[][] rawKeys = new byte[keyList.size()][];
+        for (int i = 0; i < keyList.size(); i++) {
+            rawKeys[i] = keyList.get(i).getBytes();
+        }
+        return rawKeys;
+    }
 
+    /**
+     * 查询某一天各个路由的访问次数（PV）
+     * @param date
+     * @return key - 路由
+     */
+    public Map<String, Long> findPageViews(Date date) {
+        if (date == null) {
+            throw new IllegalArgumentException("参数不能为空");
+        }
+        Map<Object, Object> entries = redisTemplate.opsForHash().entries(RedisKeyUtil.getPageViewKey(format(date)));
+        Map<String, Long> pageViews = new HashMap<>();
+        for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+            pageViews.put(entry.getKey().toString(), ((Number) entry.getValue()).longValue());
+        }
+        return pageViews;
+    }
 
+    /**
+     * 统计指定日期范围内某个帖子的访客数量（同一访客只计一次）
+     * @param postId
+     * @param start
+     * @param end
+     * @return
+     */
+    public long calculatePostViews(int postId, Date start, Date end) {
+        if (start == null || end == null) {
+            throw new IllegalArgumentException("参数不能为空");
+        }
+        List<String> keyList = new ArrayList<>();
+        for (LocalDate date = toLocalDate(start); !date.isAfter(toLocalDate(end)); date = date.plusDays(1)) {
+            keyList.add(RedisKeyUtil.getPostViewKey(postId, date.format(DAY_FORMATTER)));
+        }
+        if (keyList.isEmpty()) {
+            return 0;
+        }
+        return redisTemplate.opsForHyperLogLog().size(keyList.toArray());
+    }
 
+    /**
+     * 将指定的 IP 计入当天的 UV（先记录在本地，由后台线程定时批量写入 Redis）
+     * @param ip
+     */
+    public void recordUV(String ip) {
+        pendingIps.compute(today, (day, ips) -> {
+            ips = ips == null ? new HashSet<>() : ips;
+            ips.add(ip);
+            return ips;
+        });
+    }
 
+    /**
+     * 将指定的用户计入当天的 DAU（先记录在本地，由后台线程定时批量写入 Redis）
+     * @param userId
+     */
+    public void recordDAU(int userId) {
+        pendingUserIds.compute(today, (day, userIds) -> {
+            userIds = userIds == null ? new HashSet<>() : userIds;
+            userIds.add(userId);
+            return userIds;
+        });
+    }
 
+    /**
+     * 将一次访问计入当天某个路由的 PV
+     * @param path 路由（如 /discuss/detail/{discussPostId}）
+     */
+    public void recordPageView(String path) {
+        pendingPageViews.compute(today, (day, pageViews) -> {
+            pageViews = pageViews == null ? new HashMap<>() : pageViews;
+            pageViews.merge(path, 1L, Long::sum);
+            return pageViews;
+        });
+    }
 
+    /**
+     * 将访客计入当天某个帖子的访客
+     * @param postId
+     * @param visitor 访客（user:用户id 或者 ip:IP）
+     */
+    public void recordPostView(int postId, String visitor) {
+        pendingPostViews.compute(today, (day, posts) -> {
+            posts = posts == null ? new HashMap<>() : posts;
+            posts.computeIfAbsent(postId, k -> new HashSet<>()).add(visitor);
+            return posts;
+        });
+    }
 
+    /**
+     * 更新当天的日期，并将本地记录的统计数据通过一次 pipeline 写入 Redis，写入失败的留到下次重试
+     */
+    private void flush() {
+        today = LocalDate.now().format(DAY_FORMATTER);
 
+        Map<String, Set<String>> ips = drain(pendingIps);
+        Map<String, Set<Integer>> userIds = drain(pendingUserIds);
+        Map<String, Map<String, Long>> pageViews = drain(pendingPageViews);
+        Map<String, Map<Integer, Set<String>>> postViews = drain(pendingPostViews);
+        if (ips.isEmpty() && userIds.isEmpty() && pageViews.isEmpty() && postViews.isEmpty()) {
+            return;
+        }
+        try {
+            redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                public Object execute(RedisOperations operations) throws DataAccessException {
+                    for (Map.Entry<String, Set<String>> entry : ips.entrySet()) {
+                        operations.opsForHyperLogLog().add(RedisKeyUtil.getUVKey(entry.getKey()), entry.getValue().toArray());
+                    }
+                    for (Map.Entry<String, Set<Integer>> entry : userIds.entrySet()) {
+                        String redisKey = RedisKeyUtil.getDAUKey(entry.getKey());
+                        for (Integer userId : entry.getValue()) {
+                            operations.opsForValue().setBit(redisKey, userId, true);
+                        }
+                    }
+                    for (Map.Entry<String, Map<String, Long>> entry : pageViews.entrySet()) {
+                        String redisKey = RedisKeyUtil.getPageViewKey(entry.getKey());
+                        for (Map.Entry<String, Long> pageView : entry.getValue().entrySet()) {
+                            operations.opsForHash().increment(redisKey, pageView.getKey(), pageView.getValue());
+                        }
+                    }
+                    for (Map.Entry<String, Map<Integer, Set<String>>> entry : postViews.entrySet()) {
+                        for (Map.Entry<Integer, Set<String>> postView : entry.getValue().entrySet()) {
+                            String redisKey = RedisKeyUtil.getPostViewKey(postView.getKey(), entry.getKey());
+                            operations.opsForHyperLogLog().add(redisKey, postView.getValue().toArray());
+                            operations.expire(redisKey, postViewDays, TimeUnit.DAYS);
+                        }
+                    }
+                    return null;
+                }
+            });
+        } catch (Exception e) {
+            logger.error("写入 UV、DAU 失败: " + e.getMessage());
+            // 放回本地，与取出之后新记录的数据合并
+            ips.forEach((day, values) -> pendingIps.merge(day, values, (current, failed) -> {
+                current.addAll(failed);
+                return current;
+            }));
+            userIds.forEach((day, values) -> pendingUserIds.merge(day, values, (current, failed) -> {
+                current.addAll(failed);
+                return current;
+            }));
+            pageViews.forEach((day, values) -> pendingPageViews.merge(day, values, (current, failed) -> {
+                failed.forEach((path, count) -> current.merge(path, count, Long::sum));
+                return current;
+            }));
+            postViews.forEach((day, values) -> pendingPostViews.merge(day, values, (current, failed) -> {
+                failed.forEach((postId, visitors) -> current.computeIfAbsent(postId, k -> new HashSet<>()).addAll(visitors));
+                return current;
+            }));
+        }
+    }
 
+    /**
+     * 取出本地记录的各个日期的数据（从 map 中移除，之后记录的数据会放入新的集合）
+     * @param pending
+     * @param <V>
+     * @return key - 日期
+     */
+    private <V> Map<String, V> drain(Map<String, V> pending) {
+        Map<String, V> drained = new HashMap<>();
+        for (String day : new ArrayList<>(pending.keySet())) {
+            V values = pending.remove(day);
+            if (values != null) {
+                drained.put(day, values);
+            }
+        }
+        return drained;
+    }
+}
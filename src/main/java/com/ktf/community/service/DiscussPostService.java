@@ -1,19 +1,30 @@
 package com.ktf.community.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.CacheLoader;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.LoadingCache;
 import com.ktf.community.dao.DiscussPostMapper;
 import com.ktf.community.entity.DiscussPost;
+import com.ktf.community.util.MarkdownRenderer;
+import com.ktf.community.util.RedisKeyUtil;
 import com.ktf.community.util.SensitiveFilter;
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Service;
-import org.springframework.web.util.HtmlUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.annotation.PostConstruct;
 import java.util.List;
@@ -24,7 +35,7 @@ import java.util.concurrent.TimeUnit;
  * @date 2021/9/7 8:40
  */
 @Service
-public class DiscussPostService {
+public class DiscussPostService implements MessageListener {
 
     private static final Logger logger = LoggerFactory.getLogger(DiscussPostService.class);
 
@@ -40,6 +51,25 @@ public class DiscussPostService {
     @Autowired
     private SensitiveFilter sensitiveFilter;
 
+    @Autowired
+    private MarkdownRenderer markdownRenderer;
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Value("${caffeine.post-detail.max-size}")
+    private int detailMaxSize;
+
+    @Value("${caffeine.post-detail.expire-seconds}")
+    private int detailExpireSeconds;
+
+    // 帖子详情的本地缓存（一级缓存），热门帖子的详情页不需要访问 Redis 和数据库
+    // 帖子信息变更时通过 Redis 发布/订阅通知所有节点清除，过期时间只是兜底
+    private Cache<Integer, DiscussPost> postCache;
+
     // 帖子总数的本地缓存
     // key - userId (其实就是0，表示查询的是所有用户，对特定用户的查询不启用缓存）
     private LoadingCache<Integer, Integer> postRowsCache;
@@ -49,7 +79,7 @@ public class DiscussPostService {
     private LoadingCache<String, List<DiscussPost>> postListCache;
 
     /**
-     * 初始化本地缓存
+     * 初始化本地缓存，并订阅帖子信息变更的通知
      */
     @PostConstruct
     public void init() {
@@ -93,6 +123,26 @@ public class DiscussPostService {
                         return discussPostMapper.selectDiscussPostRows(key);
                     }
                 });
+
+        // 初始化帖子详情缓存
+        postCache = Caffeine.newBuilder()
+                .maximumSize(detailMaxSize)
+                .expireAfterWrite(detailExpireSeconds, TimeUnit.SECONDS)
+                .build();
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(RedisKeyUtil.getPostInvalidateChannel()));
+    }
+
+    /**
+     * 收到帖子信息变更的通知，清除对应的本地缓存
+     * @param message 帖子 id
+     * @param pattern
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Object body = redisTemplate.getValueSerializer().deserialize(message.getBody());
+        if (body != null) {
+            postCache.invalidate(Integer.parseInt(body.toString()));
+        }
     }
 
     /**
@@ -118,7 +168,7 @@ public class DiscussPostService {
      * @param offset 每页的起始索引
      * @param limit  每页显示多少条数据
      * @param orderMode 排行模式（若传入1，则按照热度来排序）
-     * @return 返回帖子列表
+     * @return 返回帖子列表（不包含正文，需要正文时使用 findDiscussPostById）
      */
     public List<DiscussPost> findDiscussPosts(int userId, int offset, int limit, int orderMode) {
         // 查询本地缓存（当查询的是所有用户的帖子并且按照热度排序时）
@@ -130,13 +180,47 @@ public class DiscussPostService {
         return discussPostMapper.selectDiscussPosts(userId, offset, limit, orderMode);
     }
 
+    /**
+     * 按游标分页查询所有用户的帖子（JSON 接口使用）
+     * @param cursor 上一页的最后一个帖子，为 null 时从第一页开始
+     * @param limit 查询多少条数据
+     * @param orderMode 排行模式（若传入1，则按照热度来排序）
+     * @return 返回帖子列表（不包含正文）
+     */
+    public List<DiscussPost> findDiscussPostsAfter(DiscussPost cursor, int limit, int orderMode) {
+        return discussPostMapper.selectDiscussPostsAfter(cursor, limit, orderMode);
+    }
+
     /**
      * 根据 id 查询帖子
      * @param id
      * @return
      */
     public DiscussPost findDiscussPostById(int id) {
-        return discussPostMapper.selectDiscussPostById(id);
+        // 先查本地缓存，再查 Redis，最后查数据库（不存在的帖子不会被缓存）
+        // 缓存中的对象是共享的，调用方不能修改
+        return postCache.get(id, postId -> {
+            DiscussPost post = getCache(postId);
+            if (post == null) {
+                post = initCache(postId);
+            }
+            return post;
+        });
+    }
+
+    /**
+     * 根据 id 查询帖子的副本（需要修改帖子、或者交给会修改它的组件时使用，不影响缓存中共享的对象）
+     * @param id
+     * @return
+     */
+    public DiscussPost findDiscussPostCopyById(int id) {
+        DiscussPost post = findDiscussPostById(id);
+        if (post == null) {
+            return null;
+        }
+        DiscussPost copy = new DiscussPost();
+        BeanUtils.copyProperties(post, copy);
+        return copy;
     }
 
     /**
@@ -148,12 +232,11 @@ public class DiscussPostService {
             throw new IllegalArgumentException("参数不能为空");
         }
 
-        // 转移 HTML 标记，防止在 HTML 标签中输入攻击语句
-        discussPost.setTitle(HtmlUtils.htmlEscape(discussPost.getTitle()));
-        discussPost.setContent(HtmlUtils.htmlEscape(discussPost.getContent()));
-
-        discussPost.setTitle(sensitiveFilter.filter(discussPost.getTitle()));
-        discussPost.setContent(sensitiveFilter.filter(discussPost.getContent()));
+        // 转义 HTML 标记（防止在 HTML 标签中输入攻击语句），同时过滤敏感词
+        discussPost.setTitle(sensitiveFilter.sanitize(discussPost.getTitle()));
+        discussPost.setContent(sensitiveFilter.sanitize(discussPost.getContent()));
+        // 渲染 Markdown，详情页直接输出
+        discussPost.setContentHtml(markdownRenderer.render(discussPost.getContent()));
 
         return discussPostMapper.insertDiscussPost(discussPost);
     }
@@ -165,7 +248,9 @@ public class DiscussPostService {
      * @return
      */
     public int updateType(int id, int type) {
-        return discussPostMapper.updateType(id, type);
+        int rows = discussPostMapper.updateType(id, type);
+        clearCache(id);
+        return rows;
     }
 
     /**
@@ -175,7 +260,9 @@ public class DiscussPostService {
      * @return
      */
     public int updateStatus(int id, int status) {
-        return discussPostMapper.updateStatus(id, status);
+        int rows = discussPostMapper.updateStatus(id, status);
+        clearCache(id);
+        return rows;
     }
 
     /**
@@ -185,7 +272,9 @@ public class DiscussPostService {
      * @return
      */
     public int updateCommentCount(int id, int commentCount) {
-        return discussPostMapper.updateCommentCount(id, commentCount);
+        int rows = discussPostMapper.updateCommentCount(id, commentCount);
+        clearCache(id);
+        return rows;
     }
 
 
@@ -196,7 +285,66 @@ public class DiscussPostService {
      * @return
      */
     public int updateScore(int id, double score) {
-        return discussPostMapper.updateScore(id, score);
+        int rows = discussPostMapper.updateScore(id, score);
+        clearCache(id);
+        return rows;
+    }
+
+    /**
+     * 从 Redis 中查询帖子
+     * @param postId
+     * @return
+     */
+    private DiscussPost getCache(int postId) {
+        return (DiscussPost) redisTemplate.opsForValue().get(RedisKeyUtil.getPostDetailKey(postId));
+    }
+
+    /**
+     * 从数据库中查询帖子，并存入 Redis
+     * @param postId
+     * @return
+     */
+    private DiscussPost initCache(int postId) {
+        DiscussPost post = discussPostMapper.selectDiscussPostById(postId);
+        if (post == null) {
+            return null;
+        }
+        // 之前发布的帖子没有渲染好的 HTML，第一次查看时渲染并保存
+        if (post.getContentHtml() == null && post.getContent() != null) {
+            post.setContentHtml(markdownRenderer.render(post.getContent()));
+            discussPostMapper.updateContentHtml(postId, post.getContentHtml());
+        }
+        redisTemplate.opsForValue().set(RedisKeyUtil.getPostDetailKey(postId), post, 3600, TimeUnit.SECONDS);
+        return post;
+    }
+
+    /**
+     * 帖子信息变更时清除缓存
+     * 在事务中调用时（如添加评论时更新评论数量）等到事务提交之后再清除，
+     * 否则其他请求可能在提交之前把旧数据重新放入缓存
+     * @param postId
+     */
+    private void clearCache(int postId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == TransactionSynchronization.STATUS_COMMITTED) {
+                        evict(postId);
+                    }
+                }
+            });
+        } else {
+            evict(postId);
+        }
+    }
+
+    private void evict(int postId) {
+        redisTemplate.delete(RedisKeyUtil.getPostDetailKey(postId));
+        // 本节点立即清除，不等待通知
+        postCache.invalidate(postId);
+        // 通知各节点清除
+        redisTemplate.convertAndSend(RedisKeyUtil.getPostInvalidateChannel(), postId);
     }
 }
 
@@ -1,6 +1,6 @@
 package com.ktf.community.service;
 
-import com.ktf.community.entity.User;
+import com.ktf.community.entity.UserProfile;
 import com.ktf.community.util.CommunityConstant;
 import com.ktf.community.util.RedisKeyUtil;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -77,7 +77,7 @@ public class FollowService implements CommunityConstant {
         for (Integer targetId : targetIds) {
             HashMap<String, Object> map = new HashMap<>();
 
-            User user = userService.findUserById(targetId);
+            UserProfile user = userService.findUserProfileById(targetId);
             map.put("user", user);
             Double score = redisTemplate.opsForZSet().score(followeeKey, targetId);
             map.put("followTime", new Date(score.longValue()));
@@ -104,7 +104,7 @@ public class FollowService implements CommunityConstant {
         ArrayList<Map<String, Object>> list = new ArrayList<>();
         for (Integer targetId : targetIds) {
             HashMap<String, Object> map = new HashMap<>();
-            User user = userService.findUserById(targetId);
+            UserProfile user = userService.findUserProfileById(targetId);
             map.put("user", user);
             Double score = redisTemplate.opsForZSet().score(followerKey, targetId);
             map.put("followTime", new Date(score.longValue()));
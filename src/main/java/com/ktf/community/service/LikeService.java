@@ -8,6 +8,10 @@ import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.stereotype.Service;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 /** 点赞相关
  * @author github.com/kuangtf
  * @date 2021/9/7 9:25
@@ -29,6 +33,33 @@ public class LikeService {
         return redisTemplate.opsForSet().size(entityLikeKey);
     }
 
+    /**
+     * 批量查询实体的点赞数量（一次 Redis 往返）
+     * @param entityType
+     * @param entityIds
+     * @return key - 实体 id，value - 点赞数量
+     */
+    public Map<Integer, Long> findEntityLikeCounts(int entityType, List<Integer> entityIds) {
+        Map<Integer, Long> likeCounts = new HashMap<>();
+        if (entityIds == null || entityIds.isEmpty()) {
+            return likeCounts;
+        }
+        List<Object> sizes = redisTemplate.executePipelined(new SessionCallback() {
+            @Override
+            public Object execute(RedisOperations redisOperations) throws DataAccessException {
+                for (Integer entityId : entityIds) {
+                    redisOperations.opsForSet().size(RedisKeyUtil.getEntityLikeKey(entityType, entityId));
+                }
+                return null;
+            }
+        });
+        for (int i = 0; i < entityIds.size(); i++) {
+            Long size = (Long) sizes.get(i);
+            likeCounts.put(entityIds.get(i), size == null ? 0L : size);
+        }
+        return likeCounts;
+    }
+
     /**
      * 查询某个用户获得赞数量
      * @param userId
@@ -53,6 +84,33 @@ public class LikeService {
         return redisTemplate.opsForSet().isMember(entityLikeKey, userId) ? 1 : 0;
     }
 
+    /**
+     * 批量查询某个用户对多个实体的点赞状态（一次 Redis 往返）
+     * @param userId 用户 id
+     * @param entityType 实体类型
+     * @param entityIds 实体 id
+     * @return key - 实体 id，value - 1：已赞， 0：未赞
+     */
+    public Map<Integer, Integer> findEntityLikeStatuses(int userId, int entityType, List<Integer> entityIds) {
+        Map<Integer, Integer> likeStatuses = new HashMap<>();
+        if (entityIds == null || entityIds.isEmpty()) {
+            return likeStatuses;
+        }
+        List<Object> members = redisTemplate.executePipelined(new SessionCallback() {
+            @Override
+            public Object execute(RedisOperations redisOperations) throws DataAccessException {
+                for (Integer entityId : entityIds) {
+                    redisOperations.opsForSet().isMember(RedisKeyUtil.getEntityLikeKey(entityType, entityId), userId);
+                }
+                return null;
+            }
+        });
+        for (int i = 0; i < entityIds.size(); i++) {
+            likeStatuses.put(entityIds.get(i), Boolean.TRUE.equals(members.get(i)) ? 1 : 0);
+        }
+        return likeStatuses;
+    }
+
     /**
      * 点赞
      * @param userId 点赞用户的 id
@@ -0,0 +1,298 @@
+package com.ktf.community.service;
+
+import com.ktf.community.entity.MailTask;
+import com.ktf.community.util.CommunityUtil;
+import com.ktf.community.util.MailClient;
+import com.ktf.community.util.RedisKeyUtil;
+import com.ktf.community.util.TokenBucket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 异步发送邮件
+ * 请求线程只负责把渲染好的邮件放入 Redis 的发件队列，由固定数量的后台线程批量发送
+ * 发送失败的邮件按指数退避放入重试集合，超过最大次数后放弃；同一个收件域名按配置的速率发送
+ * 取出的邮件先移入处理列表，发送完成后才删除；进程中途退出时，超时未确认的邮件会被放回发件队列
+ * 邮件服务器故障时，积压的只是 Redis 中的队列，不会占用 Tomcat 线程
+ */
+@Service
+public class MailService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MailService.class);
+
+    // 被限流的邮件多久之后再发送
+    private static final long THROTTLE_DELAY_MS = 1000;
+
+    // 处理列表中的邮件超过多久仍未确认，就认为发送它的进程已经退出
+    // 必须远大于发送一批邮件的最长时间，由 spring.mail.properties.mail.smtps.* 的 SMTP 超时保证
+    private static final long PROCESSING_TIMEOUT_MS = 5 * 60 * 1000;
+
+    // 多久检查一次处理列表
+    private static final long RECOVER_INTERVAL_MS = 60 * 1000;
+
+    @Autowired
+    private MailClient mailClient;
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+
+    // 发送邮件的线程数
+    @Value("${community.mail.workers}")
+    private int workerCount;
+
+    // 每批最多发送多少封邮件（共用一个 SMTP 连接）
+    @Value("${community.mail.batch-size}")
+    private int batchSize;
+
+    // 最多尝试发送多少次
+    @Value("${community.mail.max-attempts}")
+    private int maxAttempts;
+
+    // 第一次重试的间隔（秒），之后每次翻倍
+    @Value("${community.mail.retry-delay-seconds}")
+    private int retryDelaySeconds;
+
+    // 每个收件域名每秒最多发送多少封邮件
+    @Value("${community.mail.domain-rate}")
+    private int domainRate;
+
+    // key - 收件域名，value - 该域名的令牌桶
+    private final Map<String, TokenBucket> domainBuckets = new ConcurrentHashMap<>();
+
+    // 上一次检查时处理列表中的邮件，key - 邮件 id，value - 第一次看到它的时间
+    private volatile Map<String, Long> processingSeen = new HashMap<>();
+
+    // 上一次检查处理列表的时间
+    private final AtomicLong lastRecoverTime = new AtomicLong();
+
+    private ExecutorService workers;
+
+    private volatile boolean running;
+
+    /**
+     * 启动发送邮件的线程
+     */
+    @PostConstruct
+    public void init() {
+        running = true;
+        AtomicInteger index = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(workerCount, r -> {
+            Thread thread = new Thread(r, "mail-worker-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < workerCount; i++) {
+            workers.execute(this::work);
+        }
+    }
+
+    /**
+     * 停止发送，未发送的邮件留在 Redis 中，重启后继续发送
+     */
+    @PreDestroy
+    public void destroy() {
+        running = false;
+        workers.shutdown();
+        try {
+            workers.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 发送邮件（放入发件队列后立即返回）
+     * @param to 收件人
+     * @param subject 主题
+     * @param content 内容
+     */
+    public void sendMail(String to, String subject, String content) {
+        redisTemplate.opsForList().leftPush(RedisKeyUtil.getMailOutboxKey(), new MailTask(CommunityUtil.generateUUID(), to, subject, content));
+    }
+
+    /**
+     * 发送线程：不断从发件队列中取出一批邮件发送
+     */
+    private void work() {
+        while (running) {
+            try {
+                moveDueRetries();
+                recoverStale();
+                List<MailTask> batch = poll();
+                if (!batch.isEmpty()) {
+                    send(batch);
+                }
+            } catch (Exception e) {
+                logger.error("发送邮件的线程出错: " + e.getMessage());
+                sleep(THROTTLE_DELAY_MS);
+            }
+        }
+    }
+
+    /**
+     * 从发件队列中取出一批邮件（同时移入处理列表），队列为空时最多阻塞等待 1 秒
+     * @return
+     */
+    private List<MailTask> poll() {
+        String outboxKey = RedisKeyUtil.getMailOutboxKey();
+        String processingKey = RedisKeyUtil.getMailProcessingKey();
+        List<MailTask> batch = new ArrayList<>();
+        Object task = redisTemplate.opsForList().rightPopAndLeftPush(outboxKey, processingKey, 1, TimeUnit.SECONDS);
+        while (task != null) {
+            batch.add((MailTask) task);
+            if (batch.size() >= batchSize) {
+                break;
+            }
+            task = redisTemplate.opsForList().rightPopAndLeftPush(outboxKey, processingKey);
+        }
+        return batch;
+    }
+
+    /**
+     * 发送一批邮件：超过域名速率的邮件稍后再发，发送失败的邮件放入重试集合
+     * 每封邮件处理完（发送成功、放入重试集合或放弃）之后才从处理列表中删除
+     * @param batch
+     */
+    private void send(List<MailTask> batch) {
+        List<MailTask> allowed = new ArrayList<>();
+        for (MailTask task : batch) {
+            if (acquire(task.getTo())) {
+                allowed.add(task);
+            } else {
+                schedule(task, THROTTLE_DELAY_MS);
+                ack(task);
+            }
+        }
+        if (allowed.isEmpty()) {
+            return;
+        }
+
+        for (MailTask task : mailClient.sendMails(allowed)) {
+            // 处理列表中保存的是原来的邮件，修改副本，确认时才能匹配到
+            MailTask retry = nextAttempt(task);
+            if (retry.getAttempts() >= maxAttempts) {
+                logger.error("邮件发送失败，已放弃: " + retry);
+                continue;
+            }
+            // 指数退避
+            schedule(retry, retryDelaySeconds * 1000L << (retry.getAttempts() - 1));
+        }
+        for (MailTask task : allowed) {
+            ack(task);
+        }
+    }
+
+    /**
+     * 确认邮件已经处理完，从处理列表中删除
+     * @param task
+     */
+    private void ack(MailTask task) {
+        redisTemplate.opsForList().remove(RedisKeyUtil.getMailProcessingKey(), 1, task);
+    }
+
+    /**
+     * 复制一封邮件，尝试次数加一
+     * @param task
+     * @return
+     */
+    private static MailTask nextAttempt(MailTask task) {
+        MailTask retry = new MailTask(task.getId(), task.getTo(), task.getSubject(), task.getContent());
+        retry.setAttempts(task.getAttempts() + 1);
+        return retry;
+    }
+
+    /**
+     * 将邮件放入重试集合，到期后重新进入发件队列
+     * @param task
+     * @param delayMs
+     */
+    private void schedule(MailTask task, long delayMs) {
+        redisTemplate.opsForZSet().add(RedisKeyUtil.getMailRetryKey(), task, System.currentTimeMillis() + delayMs);
+    }
+
+    /**
+     * 将到期的重试邮件移回发件队列
+     * 先从集合中删除成功的线程才移动，多个线程、多个节点同时执行时不会重复发送
+     */
+    private void moveDueRetries() {
+        String retryKey = RedisKeyUtil.getMailRetryKey();
+        Set<Object> due = redisTemplate.opsForZSet().rangeByScore(retryKey, 0, System.currentTimeMillis(), 0, batchSize);
+        if (due == null) {
+            return;
+        }
+        for (Object task : due) {
+            Long removed = redisTemplate.opsForZSet().remove(retryKey, task);
+            if (removed != null && removed > 0) {
+                redisTemplate.opsForList().leftPush(RedisKeyUtil.getMailOutboxKey(), task);
+            }
+        }
+    }
+
+    /**
+     * 将处理列表中超时未确认的邮件放回发件队列（发送它的进程已经退出）
+     * 每个节点记下自己第一次看到每封邮件的时间，不依赖各节点的时钟一致
+     * 先从处理列表中删除成功的线程才移动，多个线程、多个节点同时执行时不会重复放回
+     */
+    private void recoverStale() {
+        long now = System.currentTimeMillis();
+        long last = lastRecoverTime.get();
+        if (now - last < RECOVER_INTERVAL_MS || !lastRecoverTime.compareAndSet(last, now)) {
+            return;
+        }
+        String processingKey = RedisKeyUtil.getMailProcessingKey();
+        List<Object> tasks = redisTemplate.opsForList().range(processingKey, 0, -1);
+        Map<String, Long> seen = new HashMap<>();
+        if (tasks != null) {
+            for (Object task : tasks) {
+                String id = ((MailTask) task).getId();
+                Long since = processingSeen.get(id);
+                if (since == null || now - since < PROCESSING_TIMEOUT_MS) {
+                    seen.put(id, since == null ? now : since);
+                    continue;
+                }
+                Long removed = redisTemplate.opsForList().remove(processingKey, 1, task);
+                if (removed != null && removed > 0) {
+                    logger.warn("邮件处理超时，放回发件队列: " + task);
+                    redisTemplate.opsForList().leftPush(RedisKeyUtil.getMailOutboxKey(), task);
+                }
+            }
+        }
+        processingSeen = seen;
+    }
+
+    /**
+     * 获取某个收件人所在域名的发送许可
+     * @param to
+     * @return
+     */
+    private boolean acquire(String to) {
+        String domain = to == null ? "" : to.substring(to.lastIndexOf('@') + 1).toLowerCase();
+        return domainBuckets.computeIfAbsent(domain, k -> new TokenBucket(domainRate, 1)).tryAcquire();
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
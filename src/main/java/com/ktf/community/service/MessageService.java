@@ -2,19 +2,41 @@ package com.ktf.community.service;
 
 import com.ktf.community.dao.MessageMapper;
 import com.ktf.community.entity.Message;
+import com.ktf.community.entity.NoticeSummary;
+import com.ktf.community.util.CommunityConstant;
 import com.ktf.community.util.SensitiveFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.util.HtmlUtils;
-
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /** 私信、系统通知
  * @author github.com/kuangtf
  * @date 2021/9/9 7:53
  */
 @Service
-public class MessageService {
+public class MessageService implements CommunityConstant {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageService.class);
 
     @Autowired
     private MessageMapper messageMapper;
@@ -22,6 +44,58 @@ public class MessageService {
     @Autowired
     private SensitiveFilter sensitiveFilter;
 
+    // 已读状态写入数据库的间隔
+    @Value("${community.message.read.flush-interval-ms}")
+    private long readFlushIntervalMs;
+
+    // 每条 update 语句最多包含多少个 id
+    @Value("${community.message.read.batch-size}")
+    private int readBatchSize;
+
+    // 最多缓存多少条已读消息，数据库不可用时避免无限增长
+    @Value("${community.message.read.max-pending}")
+    private int readMaxPending;
+
+    // 等待写入数据库的已读消息（合并多个请求的已读操作，定时批量写入）
+    // key - 消息 id，value - 消息
+    private final Map<Integer, Message> pendingReads = new ConcurrentHashMap<>();
+
+    // 按接收者索引的已读消息，统计未读数量时只需遍历当前用户的消息
+    // key - 接收者 id，value - 该用户等待写入的消息
+    private final Map<Integer, Set<Message>> pendingReadsByUser = new ConcurrentHashMap<>();
+
+    // 查询未读数量时持有读锁（查询数据库和扣除已读消息之间），写入已读状态时持有写锁（写入数据库和移除已读消息之间）
+    // 避免数据库中已经是已读、而已读消息还没移除时被扣除两次
+    private final ReadWriteLock pendingReadsLock = new ReentrantReadWriteLock();
+
+    private ScheduledExecutorService readFlusher;
+
+    /**
+     * 启动已读状态的定时写入
+     */
+    @PostConstruct
+    public void init() {
+        readFlusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "message-read-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        readFlusher.scheduleWithFixedDelay(this::flushReads, readFlushIntervalMs, readFlushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 关闭前将剩余的已读状态写入数据库
+     */
+    @PreDestroy
+    public void destroy() {
+        readFlusher.shutdown();
+        try {
+            readFlusher.awaitTermination(readFlushIntervalMs * 2, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushReads();
+    }
 
     /**
      * 查询当前用户的会话数量
@@ -59,7 +133,14 @@ public class MessageService {
      * @return
      */
     public int findLetterUnreadCount(int userId, String conversationId) {
-        return messageMapper.selectLetterUnreadCount(userId, conversationId);
+        pendingReadsLock.readLock().lock();
+        try {
+            int count = messageMapper.selectLetterUnreadCount(userId, conversationId);
+            // 扣除已读但还没写入数据库的私信
+            return Math.max(count - countPendingReads(userId, false, conversationId), 0);
+        } finally {
+            pendingReadsLock.readLock().unlock();
+        }
     }
 
     /**
@@ -69,7 +150,14 @@ public class MessageService {
      * @return
      */
     public int findNoticeUnReadCount(int userId, String topic) {
-        return messageMapper.selectNoticeUnReadCount(userId, topic);
+        pendingReadsLock.readLock().lock();
+        try {
+            int count = messageMapper.selectNoticeUnReadCount(userId, topic);
+            // 扣除已读但还没写入数据库的通知
+            return Math.max(count - countPendingReads(userId, true, topic), 0);
+        } finally {
+            pendingReadsLock.readLock().unlock();
+        }
     }
 
     /**
@@ -92,16 +180,106 @@ public class MessageService {
         return messageMapper.updateStatus(ids, 1);
     }
 
+    /**
+     * 异步读取私信/通知：先记录下来，由后台线程合并后批量写入数据库
+     * 在写入之前，未读数量的查询会扣除这些消息，页面上的未读数量不会出现延迟
+     * 注意：扣除只在当前节点有效，已读消息保存在本节点的内存中，其他节点在写入数据库之前（最多 flush-interval-ms）仍然显示为未读
+     * @param messages 未读的私信/通知
+     */
+    public void readMessageAsync(List<Message> messages) {
+        List<Integer> overflow = new ArrayList<>();
+        for (Message message : messages) {
+            if (pendingReads.size() >= readMaxPending) {
+                overflow.add(message.getId());
+            } else {
+                // 先加入索引再加入 pendingReads，保证写入线程移除时索引中已经存在
+                pendingReadsByUser.compute(message.getToId(), (userId, set) -> {
+                    if (set == null) {
+                        set = ConcurrentHashMap.newKeySet();
+                    }
+                    set.add(message);
+                    return set;
+                });
+                if (pendingReads.putIfAbsent(message.getId(), message) != null) {
+                    removePendingRead(message);
+                }
+            }
+        }
+        // 缓存已满，超出的部分直接写入数据库
+        if (!overflow.isEmpty()) {
+            messageMapper.updateStatus(overflow, 1);
+        }
+    }
+
+    /**
+     * 统计某个用户已读但还没写入数据库的私信/通知数量（只统计当前节点内存中的，调用方需持有读锁）
+     * @param userId 接收者 id
+     * @param notice true - 系统通知，false - 私信
+     * @param conversationId 会话 id 或通知主题，为 null 时统计全部
+     * @return
+     */
+    private int countPendingReads(int userId, boolean notice, String conversationId) {
+        Set<Message> messages = pendingReadsByUser.get(userId);
+        if (messages == null) {
+            return 0;
+        }
+        int count = 0;
+        for (Message message : messages) {
+            if ((message.getFromId() == SYSTEM_USER_ID) == notice
+                    && (conversationId == null || conversationId.equals(message.getConversationId()))) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 将等待中的已读状态批量写入数据库，写入失败的留到下次重试
+     */
+    private void flushReads() {
+        if (pendingReads.isEmpty()) {
+            return;
+        }
+        List<Integer> ids = new ArrayList<>(pendingReads.keySet());
+        for (int from = 0; from < ids.size(); from += readBatchSize) {
+            List<Integer> batch = ids.subList(from, Math.min(from + readBatchSize, ids.size()));
+            // 写入和移除在同一个写锁内完成，查询未读数量时不会看到写入了一半的状态
+            pendingReadsLock.writeLock().lock();
+            try {
+                messageMapper.updateStatus(batch, 1);
+                for (Integer id : batch) {
+                    Message message = pendingReads.remove(id);
+                    if (message != null) {
+                        removePendingRead(message);
+                    }
+                }
+            } catch (Exception e) {
+                logger.error("批量写入已读状态失败: " + e.getMessage());
+            } finally {
+                pendingReadsLock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * 从按用户的索引中移除一条已读消息，用户没有剩余的消息时移除整个集合
+     * @param message
+     */
+    private void removePendingRead(Message message) {
+        pendingReadsByUser.computeIfPresent(message.getToId(), (userId, set) -> {
+            set.remove(message);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
     /**
      * 添加一条私信
      * @param message
      * @return
      */
     public int addMessage(Message message) {
-        // 转义 HTML 标签
-        message.setContent(HtmlUtils.htmlEscape(message.getContent()));
-        // 过滤敏感词
-        message.setContent(sensitiveFilter.filter(message.getContent()));
+        // 转义 HTML 标签、过滤敏感词
+        message.setContent(sensitiveFilter.sanitize(message.getContent()));
 
         return messageMapper.insertMessage(message);
     }
@@ -137,23 +315,45 @@ public class MessageService {
     public List<Message> findNotices(int userId, String topic, int offset, int limit) {
         return messageMapper.selectNotices(userId, topic, offset, limit);
     }
-}
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
 
+    /**
+     * 查询某个用户每个主题下的通知概览（最新通知、通知数量、未读数量），只查询一次数据库
+     * @param userId
+     * @return key - 主题
+     */
+    public Map<String, NoticeSummary> findNoticeSummaries(int userId) {
+        Map<String, NoticeSummary> summaries = new HashMap<>();
+        pendingReadsLock.readLock().lock();
+        try {
+            List<NoticeSummary> list = messageMapper.selectNoticeSummaries(userId);
+            if (list != null) {
+                for (NoticeSummary summary : list) {
+                    // 扣除已读但还没写入数据库的通知
+                    int unread = summary.getUnreadCount() - countPendingReads(userId, true, summary.getTopic());
+                    summary.setUnreadCount(Math.max(unread, 0));
+                    summaries.put(summary.getTopic(), summary);
+                }
+            }
+        } finally {
+            pendingReadsLock.readLock().unlock();
+        }
+        return summaries;
+    }
 
+    /**
+     * 归档一批系统通知：将已读且早于指定时间的通知移动到归档表 message_archive 中
+     * 复制和删除要么一起成功，要么一起失败
+     * @param before 早于该时间的通知才会被归档
+     * @param batchSize 每批最多归档多少条
+     * @return 本批归档的数量，返回 0 表示没有需要归档的通知了
+     */
+    @Transactional(isolation = Isolation.READ_COMMITTED, propagation = Propagation.REQUIRED)
+    public int archiveNotices(Date before, int batchSize) {
+        List<Integer> ids = messageMapper.selectArchivableNoticeIds(before, batchSize);
+        if (ids == null || ids.isEmpty()) {
+            return 0;
+        }
+        messageMapper.insertArchiveMessages(ids, before);
+        return messageMapper.deleteMessages(ids, before);
+    }
+}
@@ -1,23 +1,33 @@
 package com.ktf.community.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.ktf.community.dao.UserMapper;
 import com.ktf.community.entity.LoginTicket;
 import com.ktf.community.entity.User;
+import com.ktf.community.entity.UserProfile;
 import com.ktf.community.util.CommunityConstant;
 import com.ktf.community.util.CommunityUtil;
-import com.ktf.community.util.MailClient;
 import com.ktf.community.util.RedisKeyUtil;
+import com.ktf.community.util.TicketSigner;
+import com.ktf.community.util.UserBloomFilter;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.kafka.common.protocol.types.Field;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.parameters.P;
 import org.springframework.stereotype.Service;
 import org.thymeleaf.TemplateEngine;
 import org.thymeleaf.context.Context;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
@@ -27,7 +37,7 @@ import java.util.concurrent.TimeUnit;
  * @date 2021/9/5 12:37
  */
 @Service
-public class UserService implements CommunityConstant {
+public class UserService implements CommunityConstant, MessageListener {
 
     @Autowired
     private UserMapper userMapper;
@@ -36,11 +46,20 @@ public class UserService implements CommunityConstant {
     private TemplateEngine templateEngine;
 
     @Autowired
-    private MailClient mailClient;
+    private MailService mailService;
 
     @Autowired
     private RedisTemplate redisTemplate;
 
+    @Autowired
+    private TicketSigner ticketSigner;
+
+    @Autowired
+    private UserBloomFilter userBloomFilter;
+
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
     // 网站域名，配置文件中可配
     @Value("${community.path.domain}")
     private String domain;
@@ -49,6 +68,53 @@ public class UserService implements CommunityConstant {
     @Value("${server.servlet.context-path}")
     private String contextPath;
 
+    @Value("${caffeine.users.max-size}")
+    private int maxSize;
+
+    @Value("${caffeine.users.expire-seconds}")
+    private int expireSeconds;
+
+    // 用户的本地缓存（一级缓存），命中时不需要访问 Redis，也不需要反序列化
+    // 用户信息变更时通过 Redis 发布/订阅通知所有节点清除，过期时间只是兜底
+    private Cache<Integer, User> userCache;
+
+    // 用户公开信息的本地缓存，与包含密码、盐的 User 分开存放，展示其他用户时使用
+    private Cache<Integer, UserProfile> profileCache;
+
+    /**
+     * 初始化本地缓存，并订阅用户信息变更的通知
+     */
+    @PostConstruct
+    public void init() {
+        userCache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
+                .build();
+        profileCache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
+                .build();
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(RedisKeyUtil.getLoginInvalidateChannel()));
+    }
+
+    /**
+     * 收到用户信息变更的通知，清除对应的本地缓存
+     * @param message user:用户id（ticket:凭证 的消息与用户缓存无关，忽略）
+     * @param pattern
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Object body = redisTemplate.getValueSerializer().deserialize(message.getBody());
+        if (body == null) {
+            return;
+        }
+        String content = body.toString();
+        if (content.startsWith("user:")) {
+            int userId = Integer.parseInt(content.substring("user:".length()));
+            userCache.invalidate(userId);
+            profileCache.invalidate(userId);
+        }
+    }
 
 
     /**
@@ -79,15 +145,15 @@ public class UserService implements CommunityConstant {
             return map;
         }
 
-        // 验证账号是否已存在，根据用户名从数据库中查询是否已经存在该用户，进行逻辑判断
-        User u = userMapper.selectByName(user.getUsername());
+        // 验证账号是否已存在（布隆过滤器判断为不存在时不查询数据库）
+        User u = userBloomFilter.mightContainUsername(user.getUsername()) ? userMapper.selectByName(user.getUsername()) : null;
         if (u != null) {
             map.put("usernameMsg", "该账号已存在");
             return map;
         }
 
-        // 验证邮箱是否已存在
-        u = userMapper.selectByEmail(user.getEmail());
+        // 验证邮箱是否已存在（布隆过滤器判断为不存在时不查询数据库）
+        u = userBloomFilter.mightContainEmail(user.getEmail()) ? userMapper.selectByEmail(user.getEmail()) : null;
         if (u != null) {
             map.put("emailMsg", "该邮箱已被注册");
             return  map;
@@ -109,6 +175,7 @@ public class UserService implements CommunityConstant {
         // 注册时间
         user.setCreateTime(new Date());
         userMapper.insertUser(user);
+        userBloomFilter.put(user);
 
         // 给注册用户发送激活邮箱
         // 就是一个键值对，用来存储东西的
@@ -120,8 +187,8 @@ public class UserService implements CommunityConstant {
         // 猜想：将 context 中的变量渲染到前一个参数指定的页面中，并且将这个页面转化成一个字符串
         // 然后将这个字符串通过邮箱发送给用户，用户即可查看此页面
         String content = templateEngine.process("/mail/activation", context);
-        // 将激活链接通过邮箱发送给用户，用户点击该链接即可激活
-        mailClient.sendMail(user.getEmail(), "激活微社区账号", content);
+        // 将激活链接通过邮箱发送给用户，用户点击该链接即可激活（放入发件队列，异步发送）
+        mailService.sendMail(user.getEmail(), "激活微社区账号", content);
 
         return map;
     }
@@ -162,6 +229,11 @@ public class UserService implements CommunityConstant {
     private void clearCache(int userId) {
         String redisKey = RedisKeyUtil.getUserKey(userId);
         redisTemplate.delete(redisKey);
+        // 本节点立即清除，不等待通知
+        userCache.invalidate(userId);
+        profileCache.invalidate(userId);
+        // 通知各节点清除该用户的本地登录缓存和用户缓存
+        redisTemplate.convertAndSend(RedisKeyUtil.getLoginInvalidateChannel(), "user:" + userId);
     }
 
     /**
@@ -186,7 +258,7 @@ public class UserService implements CommunityConstant {
         }
 
         // 验证账号
-        User user = userMapper.selectByName(username);
+        User user = findUserByName(username);
         if (user == null) {
             map.put("usernameMsg", "该账号不存在");
             return map;
@@ -206,6 +278,17 @@ public class UserService implements CommunityConstant {
             return map;
         }
 
+        // 凭证过期时间：expiredSeconds 的单位是秒，需要 * 1000（使用 long，避免“记住我”的 100 天溢出）
+        long expired = System.currentTimeMillis() + expiredSeconds * 1000L;
+
+        // 使用签名凭证时，凭证本身就包含了用户 id 和过期时间，验证时不需要访问 redis（只记录在用户的凭证集合中，用于重置密码时吊销）
+        if (ticketSigner.isEnabled()) {
+            String ticket = ticketSigner.sign(user.getId(), expired);
+            addUserTicket(user.getId(), ticket, expired);
+            map.put("ticket", ticket);
+            return map;
+        }
+
         // 用户名和密码正确，为该用户生成登录凭证
         LoginTicket loginTicket = new LoginTicket();
         loginTicket.setUserId(user.getId());
@@ -213,13 +296,14 @@ public class UserService implements CommunityConstant {
         loginTicket.setTicket(CommunityUtil.generateUUID());
         // 设置凭证状态为有效（当用户登出的时候，设置凭证状态为无效））0：有效，1：无效
         loginTicket.setStatus(0);
-        // 设置凭证存活时间：这里 Data 需要传入的时间单位是毫秒，而 expiredSeconds 的单位是秒，需要 * 1000
-        loginTicket.setExpired(new Date(System.currentTimeMillis() + expiredSeconds * 1000));
+        // 设置凭证存活时间
+        loginTicket.setExpired(new Date(expired));
 
-        // 将登录凭证对象存入 redis
+        // 将登录凭证对象存入 redis，凭证过期后 key 也随之过期
         String redisKey = RedisKeyUtil.getTicketKey(loginTicket.getTicket());
         // key = 登录凭证 trick 的 redis 格式，value = 登录凭证的对象
-        redisTemplate.opsForValue().set(redisKey, loginTicket);
+        redisTemplate.opsForValue().set(redisKey, loginTicket, expiredSeconds, TimeUnit.SECONDS);
+        addUserTicket(user.getId(), loginTicket.getTicket(), expired);
 
         // controller 层需要返回值判断登录状态
         map.put("ticket", loginTicket.getTicket());
@@ -227,19 +311,85 @@ public class UserService implements CommunityConstant {
         return map;
     }
 
+    /**
+     * 将凭证记录到用户的凭证集合中，集合保留到最晚过期的凭证过期
+     * @param userId
+     * @param ticket
+     * @param expired 凭证过期时间（毫秒）
+     */
+    private void addUserTicket(int userId, String ticket, long expired) {
+        String userTicketsKey = RedisKeyUtil.getUserTicketsKey(userId);
+        redisTemplate.opsForZSet().add(userTicketsKey, ticket, expired);
+        // 顺便清理已经过期的凭证
+        redisTemplate.opsForZSet().removeRangeByScore(userTicketsKey, 0, System.currentTimeMillis());
+        Long ttl = redisTemplate.getExpire(userTicketsKey, TimeUnit.MILLISECONDS);
+        if (ttl == null || ttl < expired - System.currentTimeMillis()) {
+            redisTemplate.expireAt(userTicketsKey, new Date(expired));
+        }
+    }
+
+    /**
+     * 吊销某个用户所有未过期的凭证：签名凭证记录到已登出凭证集合中，随机凭证直接从 redis 删除
+     * 调用方随后需要通知各节点清除该用户的本地登录缓存（clearCache）
+     * @param userId
+     */
+    private void revokeUserTickets(int userId) {
+        String userTicketsKey = RedisKeyUtil.getUserTicketsKey(userId);
+        long now = System.currentTimeMillis();
+        Set<ZSetOperations.TypedTuple<Object>> tickets = redisTemplate.opsForZSet().rangeByScoreWithScores(userTicketsKey, now, Double.MAX_VALUE);
+        if (tickets != null && !tickets.isEmpty()) {
+            String revokedKey = RedisKeyUtil.getRevokedTicketKey();
+            for (ZSetOperations.TypedTuple<Object> tuple : tickets) {
+                String ticket = (String) tuple.getValue();
+                if (ticketSigner.isSigned(ticket)) {
+                    redisTemplate.opsForZSet().add(revokedKey, ticket, tuple.getScore());
+                }
+                else {
+                    redisTemplate.delete(RedisKeyUtil.getTicketKey(ticket));
+                }
+            }
+            redisTemplate.opsForZSet().removeRangeByScore(revokedKey, 0, now);
+        }
+        redisTemplate.delete(userTicketsKey);
+    }
+
     /**
      * 用户登出（将凭证状态设置为无效）
      * @param ticket
      */
     public void logout(String ticket) {
-        // 修改（先删除再插入）对应用户在 redis 中的凭证状态
-        String redisKey = RedisKeyUtil.getTicketKey(ticket);
-        // 从 redis 获取当前用户的登录凭证
-        LoginTicket loginTicket = (LoginTicket) redisTemplate.opsForValue().get(redisKey);
-        // 设置凭证状态为无效（1是无效，0是有效）
-        loginTicket.setStatus(1);
-        // 将更新状态后的凭证存入 redis
-        redisTemplate.opsForValue().set(redisKey, loginTicket);
+        if (ticketSigner.isSigned(ticket)) {
+            // 签名凭证：记录到已登出凭证集合中，直到凭证过期
+            long[] verified = ticketSigner.verify(ticket);
+            if (verified != null) {
+                String revokedKey = RedisKeyUtil.getRevokedTicketKey();
+                redisTemplate.opsForZSet().add(revokedKey, ticket, verified[1]);
+                // 顺便清理已经过期的凭证，保持集合足够小
+                redisTemplate.opsForZSet().removeRangeByScore(revokedKey, 0, System.currentTimeMillis());
+                redisTemplate.opsForZSet().remove(RedisKeyUtil.getUserTicketsKey((int) verified[0]), ticket);
+            }
+        }
+        else {
+            // 修改（先删除再插入）对应用户在 redis 中的凭证状态
+            String redisKey = RedisKeyUtil.getTicketKey(ticket);
+            // 从 redis 获取当前用户的登录凭证
+            LoginTicket loginTicket = (LoginTicket) redisTemplate.opsForValue().get(redisKey);
+            if (loginTicket != null) {
+                // 设置凭证状态为无效（1是无效，0是有效）
+                loginTicket.setStatus(1);
+                // 将更新状态后的凭证存入 redis，保留到凭证原本的过期时间
+                long ttl = loginTicket.getExpired().getTime() - System.currentTimeMillis();
+                if (ttl > 0) {
+                    redisTemplate.opsForValue().set(redisKey, loginTicket, ttl, TimeUnit.MILLISECONDS);
+                }
+                else {
+                    redisTemplate.delete(redisKey);
+                }
+                redisTemplate.opsForZSet().remove(RedisKeyUtil.getUserTicketsKey(loginTicket.getUserId()), ticket);
+            }
+        }
+        // 通知各节点清除该凭证的本地登录缓存
+        redisTemplate.convertAndSend(RedisKeyUtil.getLoginInvalidateChannel(), "ticket:" + ticket);
     }
 
     /**
@@ -255,7 +405,7 @@ public class UserService implements CommunityConstant {
             map.put("errMsg", "密码不能为空");
             return map;
         }
-        User user = userMapper.selectByName(account);
+        User user = findUserByName(account);
         if (user == null) {
             map.put("errMsg", "未发现账号");
             return map;
@@ -265,7 +415,9 @@ public class UserService implements CommunityConstant {
         if (i <= 0) {
             map.put("errMsg", "修改数据库密码错误");
         } else {
-            // 如果修改成功，这清除缓存中的用户信息
+            // 忘记密码时账号可能已经被盗用，吊销该用户所有的登录凭证
+            revokeUserTickets(user.getId());
+            // 如果修改成功，这清除缓存中的用户信息（同时通知各节点清除该用户的本地登录缓存）
             clearCache(user.getId());
         }
         return map;
@@ -278,7 +430,7 @@ public class UserService implements CommunityConstant {
      */
     public Map<String, Object> doSendEmailCode4ResetPwd(String account) {
         HashMap<String, Object> map = new HashMap<>(2);
-        User user = userMapper.selectByName(account);
+        User user = findUserByName(account);
         if (user == null) {
             map.put("errMsg","未发现账号");
             return map;
@@ -296,10 +448,10 @@ public class UserService implements CommunityConstant {
         context.setVariable("email", email);
         context.setVariable("randomCode", randomCode);
         String content = templateEngine.process("/mail/forget", context);
-        mailClient.sendMail(email, "重置微社区账号密码", content);
         String redisKey = "EmailCode4ResetPwd" + account;
-        // 设有验证码有效时间 10 分钟
+        // 设有验证码有效时间 10 分钟（先保存验证码，再放入发件队列异步发送）
         redisTemplate.opsForValue().set(redisKey, randomCode, 600, TimeUnit.SECONDS);
+        mailService.sendMail(email, "重置微社区账号密码", content);
         return map;
     }
 
@@ -309,10 +461,32 @@ public class UserService implements CommunityConstant {
      * @return
      */
     public LoginTicket findLoginTicket(String ticket) {
+        if (ticketSigner.isSigned(ticket)) {
+            return findSignedLoginTicket(ticket);
+        }
         String redisKey = RedisKeyUtil.getTicketKey(ticket);
         return (LoginTicket) redisTemplate.opsForValue().get(redisKey);
     }
 
+    /**
+     * 验证签名凭证：本地校验签名和过期时间，再检查是否已登出
+     * @param ticket
+     * @return 签名无效、已过期时返回 null；已登出时返回状态为无效的凭证
+     */
+    private LoginTicket findSignedLoginTicket(String ticket) {
+        long[] verified = ticketSigner.verify(ticket);
+        if (verified == null) {
+            return null;
+        }
+        LoginTicket loginTicket = new LoginTicket();
+        loginTicket.setTicket(ticket);
+        loginTicket.setUserId((int) verified[0]);
+        loginTicket.setExpired(new Date(verified[1]));
+        boolean revoked = redisTemplate.opsForZSet().score(RedisKeyUtil.getRevokedTicketKey(), ticket) != null;
+        loginTicket.setStatus(revoked ? 1 : 0);
+        return loginTicket;
+    }
+
     /**
      * 根据 id 查询用户
      * @param id
@@ -320,11 +494,104 @@ public class UserService implements CommunityConstant {
      */
     public User findUserById(int id) {
         // return userMapper.selectById(id);  // 如果频繁去查数据库，效率比较低
-        User user = getCache(id);
-        if (user == null) {
-            user = initCache(id);
+        // 先查本地缓存，再查 Redis，最后查数据库（不存在的用户不会被缓存）
+        return userCache.get(id, userId -> {
+            User user = getCache(userId);
+            if (user == null) {
+                user = initCache(userId);
+            }
+            return user;
+        });
+    }
+
+    /**
+     * 根据 id 查询用户的公开信息（展示其他用户时使用）
+     * @param id
+     * @return 用户不存在时返回 null
+     */
+    public UserProfile findUserProfileById(int id) {
+        return profileCache.get(id, userId -> {
+            User user = findUserById(userId);
+            return user == null ? null : new UserProfile(user);
+        });
+    }
+
+    /**
+     * 根据一组 id 批量查询用户的公开信息
+     * @param ids
+     * @return key - 用户 id
+     */
+    public Map<Integer, UserProfile> findUserProfilesByIds(Collection<Integer> ids) {
+        Map<Integer, UserProfile> profiles = new HashMap<>();
+        if (ids == null || ids.isEmpty()) {
+            return profiles;
         }
-        return user;
+        profiles.putAll(profileCache.getAllPresent(ids));
+
+        List<Integer> missIds = new ArrayList<>();
+        for (Integer id : ids) {
+            if (!profiles.containsKey(id)) {
+                missIds.add(id);
+            }
+        }
+        for (User user : findUsersByIds(missIds).values()) {
+            UserProfile profile = new UserProfile(user);
+            profiles.put(user.getId(), profile);
+            profileCache.put(user.getId(), profile);
+        }
+        return profiles;
+    }
+
+    /**
+     * 根据一组 id 批量查询用户：先从缓存中一次性取出，缓存中没有的再一次性查询数据库
+     * @param ids
+     * @return key - 用户 id
+     */
+    public Map<Integer, User> findUsersByIds(Collection<Integer> ids) {
+        Map<Integer, User> users = new HashMap<>();
+        if (ids == null || ids.isEmpty()) {
+            return users;
+        }
+
+        // 先查本地缓存
+        users.putAll(userCache.getAllPresent(ids));
+        List<Integer> idList = new ArrayList<>();
+        for (Integer id : new LinkedHashSet<>(ids)) {
+            if (!users.containsKey(id)) {
+                idList.add(id);
+            }
+        }
+        if (idList.isEmpty()) {
+            return users;
+        }
+
+        List<String> redisKeys = new ArrayList<>(idList.size());
+        for (Integer id : idList) {
+            redisKeys.add(RedisKeyUtil.getUserKey(id));
+        }
+        List<Object> cached = redisTemplate.opsForValue().multiGet(redisKeys);
+
+        // 缓存中没有的用户
+        List<Integer> missIds = new ArrayList<>();
+        for (int i = 0; i < idList.size(); i++) {
+            Object user = cached == null ? null : cached.get(i);
+            if (user != null) {
+                users.put(idList.get(i), (User) user);
+                userCache.put(idList.get(i), (User) user);
+            } else {
+                missIds.add(idList.get(i));
+            }
+        }
+
+        if (!missIds.isEmpty()) {
+            for (User user : userMapper.selectByIds(missIds)) {
+                users.put(user.getId(), user);
+                userCache.put(user.getId(), user);
+                String redisKey = RedisKeyUtil.getUserKey(user.getId());
+                redisTemplate.opsForValue().set(redisKey, user, 3600, TimeUnit.SECONDS);
+            }
+        }
+        return users;
     }
 
     /**
@@ -355,7 +622,15 @@ public class UserService implements CommunityConstant {
      * @return
      */
     public Collection<? extends GrantedAuthority> getAuthorities(int userId) {
-        User user = this.findUserById(userId);
+        return getAuthorities(this.findUserById(userId));
+    }
+
+    /**
+     * 获取某个用户的权限（已经查询到用户时使用，不需要再查一次缓存）
+     * @param user
+     * @return
+     */
+    public Collection<? extends GrantedAuthority> getAuthorities(User user) {
         ArrayList<GrantedAuthority> list = new ArrayList<>();
         list.add(new GrantedAuthority() {
             @Override
@@ -396,8 +671,10 @@ public class UserService implements CommunityConstant {
         User user = userMapper.selectById(userId);
         // 重新加盐加密
         newPassword = CommunityUtil.md5(newPassword + user.getSalt());
+        int rows = userMapper.updatePassword(userId, newPassword);
+        // 先修改数据库再清除缓存，避免清除后又被旧数据填充
         clearCache(userId);
-        return userMapper.updatePassword(userId, newPassword);
+        return rows;
     }
 
     /**
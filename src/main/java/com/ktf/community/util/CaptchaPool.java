@@ -0,0 +1,176 @@
+package com.ktf.community.util;
+
+import com.google.code.kaptcha.Producer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.imageio.ImageIO;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 预先生成的验证码池
+ * 后台线程不断生成验证码图片并编码成 PNG，放入有界队列，队列满时等待
+ * 请求线程直接取出现成的字节数组输出，池子被取空时才在请求线程中生成
+ * 每个验证码只会被取出一次
+ */
+@Component
+public class CaptchaPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(CaptchaPool.class);
+
+    @Autowired
+    private Producer captchaProducer;
+
+    // 池中最多存放多少个验证码
+    @Value("${community.captcha.pool.size}")
+    private int poolSize;
+
+    // 生成验证码的线程数
+    @Value("${community.captcha.pool.producers}")
+    private int producerCount;
+
+    private BlockingQueue<Captcha> pool;
+
+    private ExecutorService producers;
+
+    private volatile boolean running;
+
+    // 后台生成的数量
+    private final AtomicLong produced = new AtomicLong();
+
+    // 从池中取出的数量
+    private final AtomicLong served = new AtomicLong();
+
+    // 池子为空、在请求线程中生成的数量
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * 启动生成验证码的线程
+     */
+    @PostConstruct
+    public void init() {
+        pool = new ArrayBlockingQueue<>(poolSize);
+        running = true;
+        AtomicInteger index = new AtomicInteger();
+        producers = Executors.newFixedThreadPool(producerCount, r -> {
+            Thread thread = new Thread(r, "captcha-producer-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            // 生成验证码不如处理请求重要
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        for (int i = 0; i < producerCount; i++) {
+            producers.execute(this::produce);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        running = false;
+        producers.shutdownNow();
+    }
+
+    /**
+     * 取出一个验证码
+     * @return
+     */
+    public Captcha take() {
+        Captcha captcha = pool.poll();
+        if (captcha != null) {
+            served.incrementAndGet();
+            return captcha;
+        }
+        misses.incrementAndGet();
+        return render();
+    }
+
+    /**
+     * 验证码池的统计信息
+     * @return
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("size", pool.size());
+        stats.put("capacity", poolSize);
+        stats.put("produced", produced.get());
+        stats.put("served", served.get());
+        stats.put("misses", misses.get());
+        return stats;
+    }
+
+    private void produce() {
+        while (running) {
+            try {
+                pool.put(render());
+                produced.incrementAndGet();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                logger.error("生成验证码失败: " + e.getMessage());
+                sleep();
+            }
+        }
+    }
+
+    /**
+     * 生成验证码，并将图片编码成 PNG
+     * @return
+     */
+    private Captcha render() {
+        String text = captchaProducer.createText();
+        ByteArrayOutputStream png = new ByteArrayOutputStream(2048);
+        try {
+            ImageIO.write(captchaProducer.createImage(text), "png", png);
+        } catch (IOException e) {
+            throw new IllegalStateException("验证码图片编码失败", e);
+        }
+        return new Captcha(text, png.toByteArray());
+    }
+
+    private void sleep() {
+        try {
+            TimeUnit.SECONDS.sleep(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 验证码：字符和 PNG 图片
+     */
+    public static class Captcha {
+
+        private final String text;
+
+        private final byte[] png;
+
+        public Captcha(String text, byte[] png) {
+            this.text = text;
+            this.png = png;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public byte[] getPng() {
+            return png;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.ktf.community.util;
+
+import com.ktf.community.entity.LoginTicket;
+import com.ktf.community.entity.User;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Redis value 的紧凑序列化方式
+ * 访问频繁的实体（User、LoginTicket）使用手写的二进制格式：第一个字节是格式头，后面依次是各个字段
+ * 其他类型仍然使用 JSON（整数、字符串在 JSON 中本来就是原样存储的，并且集合成员、INCR 计数依赖这种格式，不能修改）
+ *
+ * 格式头的取值都小于 0x09，而 JSON 的第一个字节一定是可见字符或空白，所以读取时可以区分两种格式：
+ * 升级前写入的 JSON 数据可以继续读取；关闭 writeCompact 回退到 JSON 时，已写入的二进制数据也可以继续读取
+ * 实体增加字段时使用新的格式头，旧的格式头保留到旧数据全部过期
+ */
+public class CompactRedisSerializer implements RedisSerializer<Object> {
+
+    private static final byte HEADER_USER = 0x01;
+
+    private static final byte HEADER_LOGIN_TICKET = 0x02;
+
+    // 小于该值的第一个字节都是格式头
+    private static final byte HEADER_LIMIT = 0x09;
+
+    private final GenericJackson2JsonRedisSerializer jsonSerializer = new GenericJackson2JsonRedisSerializer();
+
+    // key - 实体类型，value - 对应的格式
+    private final Map<Class<?>, Codec> codecsByType = new HashMap<>();
+
+    // 下标 - 格式头
+    private final Codec[] codecsByHeader = new Codec[HEADER_LIMIT];
+
+    // 是否使用二进制格式写入（关闭时只写入 JSON，但仍然可以读取二进制格式）
+    private final boolean writeCompact;
+
+    public CompactRedisSerializer(boolean writeCompact) {
+        this.writeCompact = writeCompact;
+        register(User.class, new UserCodec());
+        register(LoginTicket.class, new LoginTicketCodec());
+    }
+
+    private void register(Class<?> type, Codec codec) {
+        codecsByType.put(type, codec);
+        codecsByHeader[codec.header()] = codec;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value == null) {
+            return new byte[0];
+        }
+        Codec codec = writeCompact ? codecsByType.get(value.getClass()) : null;
+        if (codec == null) {
+            return jsonSerializer.serialize(value);
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(codec.header());
+            codec.write(value, out);
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new SerializationException("序列化失败: " + value.getClass().getName(), e);
+        }
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes[0] < 0 || bytes[0] >= HEADER_LIMIT) {
+            return jsonSerializer.deserialize(bytes);
+        }
+        Codec codec = codecsByHeader[bytes[0]];
+        if (codec == null) {
+            throw new SerializationException("未知的格式头: " + bytes[0]);
+        }
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 1, bytes.length - 1));
+            return codec.read(in);
+        } catch (IOException e) {
+            throw new SerializationException("反序列化失败，格式头: " + bytes[0], e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeDate(DataOutputStream out, Date value) throws IOException {
+        out.writeLong(value == null ? Long.MIN_VALUE : value.getTime());
+    }
+
+    private static Date readDate(DataInputStream in) throws IOException {
+        long time = in.readLong();
+        return time == Long.MIN_VALUE ? null : new Date(time);
+    }
+
+    /**
+     * 某个实体类型的二进制格式
+     */
+    private interface Codec {
+
+        byte header();
+
+        void write(Object value, DataOutputStream out) throws IOException;
+
+        Object read(DataInputStream in) throws IOException;
+    }
+
+    private static class UserCodec implements Codec {
+
+        @Override
+        public byte header() {
+            return HEADER_USER;
+        }
+
+        @Override
+        public void write(Object value, DataOutputStream out) throws IOException {
+            User user = (User) value;
+            out.writeInt(user.getId());
+            writeString(out, user.getUsername());
+            writeString(out, user.getPassword());
+            writeString(out, user.getSalt());
+            writeString(out, user.getEmail());
+            out.writeInt(user.getType());
+            out.writeInt(user.getStatus());
+            writeString(out, user.getActivationCode());
+            writeString(out, user.getHeaderUrl());
+            writeDate(out, user.getCreateTime());
+        }
+
+        @Override
+        public Object read(DataInputStream in) throws IOException {
+            User user = new User();
+            user.setId(in.readInt());
+            user.setUsername(readString(in));
+            user.setPassword(readString(in));
+            user.setSalt(readString(in));
+            user.setEmail(readString(in));
+            user.setType(in.readInt());
+            user.setStatus(in.readInt());
+            user.setActivationCode(readString(in));
+            user.setHeaderUrl(readString(in));
+            user.setCreateTime(readDate(in));
+            return user;
+        }
+    }
+
+    private static class LoginTicketCodec implements Codec {
+
+        @Override
+        public byte header() {
+            return HEADER_LOGIN_TICKET;
+        }
+
+        @Override
+        public void write(Object value, DataOutputStream out) throws IOException {
+            LoginTicket loginTicket = (LoginTicket) value;
+            out.writeInt(loginTicket.getId());
+            out.writeInt(loginTicket.getUserId());
+            writeString(out, loginTicket.getTicket());
+            out.writeInt(loginTicket.getStatus());
+            writeDate(out, loginTicket.getExpired());
+        }
+
+        @Override
+        public Object read(DataInputStream in) throws IOException {
+            LoginTicket loginTicket = new LoginTicket();
+            loginTicket.setId(in.readInt());
+            loginTicket.setUserId(in.readInt());
+            loginTicket.setTicket(readString(in));
+            loginTicket.setStatus(in.readInt());
+            loginTicket.setExpired(readDate(in));
+            return loginTicket;
+        }
+    }
+}
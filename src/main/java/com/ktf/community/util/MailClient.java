@@ -1,8 +1,11 @@
 package com.ktf.community.util;
 
+import com.ktf.community.entity.MailTask;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.stereotype.Component;
@@ -10,6 +13,10 @@ import org.springframework.stereotype.Component;
 import javax.annotation.Resource;
 import javax.mail.MessagingException;
 import javax.mail.internet.MimeMessage;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * 发送激活邮件（用于注册和密码找回）
@@ -44,4 +51,50 @@ public class MailClient {
             logger.error("发送邮件失败" + e.getMessage());
         }
     }
+
+    /**
+     * 批量发送邮件（一批邮件共用一个 SMTP 连接）
+     * @param tasks
+     * @return 发送失败的邮件
+     */
+    public List<MailTask> sendMails(List<MailTask> tasks) {
+        List<MailTask> failed = new ArrayList<>();
+        Map<MimeMessage, MailTask> messages = new IdentityHashMap<>();
+        for (MailTask task : tasks) {
+            try {
+                MimeMessage mimeMessage = mailSender.createMimeMessage();
+                MimeMessageHelper helper = new MimeMessageHelper(mimeMessage);
+                helper.setFrom(from);
+                helper.setTo(task.getTo());
+                helper.setSubject(task.getSubject());
+                helper.setText(task.getContent(), true);
+                messages.put(mimeMessage, task);
+            } catch (MessagingException e) {
+                logger.error("创建邮件失败" + e.getMessage());
+                failed.add(task);
+            }
+        }
+        if (messages.isEmpty()) {
+            return failed;
+        }
+
+        try {
+            mailSender.send(messages.keySet().toArray(new MimeMessage[0]));
+        } catch (MailSendException e) {
+            logger.error("发送邮件失败" + e.getMessage());
+            if (e.getFailedMessages().isEmpty()) {
+                failed.addAll(messages.values());
+            }
+            for (Object message : e.getFailedMessages().keySet()) {
+                MailTask task = messages.get(message);
+                if (task != null) {
+                    failed.add(task);
+                }
+            }
+        } catch (MailException e) {
+            logger.error("发送邮件失败" + e.getMessage());
+            failed.addAll(messages.values());
+        }
+        return failed;
+    }
 }
@@ -0,0 +1,647 @@
+package com.ktf.community.util;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.util.HtmlUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 将帖子的 Markdown 正文渲染成 HTML（发帖时渲染一次，详情页直接输出）
+ * 支持与 editor.md 预览一致的常用语法：标题、段落（单个换行即换行）、引用、有序/无序列表、任务列表、代码块、表格、分隔线、
+ * 行内代码、粗体、斜体、删除线、链接、图片、网址自动链接、表情（:smile:，见 emoji.properties）
+ * editor.md 的 TeX 公式、流程图、时序图不支持，按普通文本显示
+ *
+ * 输入是 SensitiveFilter.sanitize 转义之后的文本，其中不会出现原始的 HTML 标记，所以输出中的标签只可能是这里生成的；
+ * 链接和图片的地址先还原 HTML 实体再经过白名单检查（http、https、mailto 和站内相对地址），其他地址（如 javascript:、
+ * 用 &#58; 编码冒号的 javascript&#58;）只显示文字，通过检查的地址重新转义后输出
+ */
+@Component
+public class MarkdownRenderer {
+
+    private static final Logger logger = LoggerFactory.getLogger(MarkdownRenderer.class);
+
+    private static final Pattern HEADING = Pattern.compile("^ {0,3}(#{1,6})(?:[ \\t]+(.*?))?(?:[ \\t]+#+)?[ \\t]*$");
+
+    private static final Pattern HR = Pattern.compile("^ {0,3}(?:(?:\\*[ \\t]*){3,}|(?:-[ \\t]*){3,}|(?:_[ \\t]*){3,})$");
+
+    private static final Pattern FENCE = Pattern.compile("^ {0,3}(`{3,}|~{3,})[ \\t]*([\\w+#.-]*).*$");
+
+    private static final Pattern QUOTE = Pattern.compile("^ {0,3}&gt; ?(.*)$");
+
+    private static final Pattern BULLET_ITEM = Pattern.compile("^( {0,3})[-*+][ \\t]+(.*)$");
+
+    private static final Pattern ORDERED_ITEM = Pattern.compile("^( {0,3})(\\d{1,9})[.)][ \\t]+(.*)$");
+
+    private static final Pattern TABLE_DIVIDER = Pattern.compile("^ {0,3}\\|?[ \\t]*:?-+:?[ \\t]*(\\|[ \\t]*:?-+:?[ \\t]*)*\\|?[ \\t]*$");
+
+    // 链接地址允许的协议（没有协议的视为站内相对地址），地址中不能有空白和控制字符
+    private static final Pattern SAFE_URL = Pattern.compile("^(?:(?:https?:|mailto:)[^\\s\\p{Cntrl}\"'<>`]+|[^\\s\\p{Cntrl}\"'<>`:]+(?:[/?#][^\\s\\p{Cntrl}\"'<>`]*)?)$", Pattern.CASE_INSENSITIVE);
+
+    // 链接地址中转义的标点
+    private static final Pattern ESCAPED_PUNCTUATION = Pattern.compile("\\\\(\\p{Punct})");
+
+    // 自动链接的网址（遇到空白、转义后的 < > " ' 或全角标点时结束）
+    private static final Pattern AUTO_LINK = Pattern.compile("^https?://[^\\s<>\"'，。！？、；：（）【】《》]+?(?=$|[\\s，。！？、；：（）【】《》]|&lt;|&gt;|&quot;|&#39;|[.,;:!?)]+(?:$|\\s))", Pattern.CASE_INSENSITIVE);
+
+    // 表情代码
+    private static final Pattern EMOJI = Pattern.compile(":([a-z0-9_+-]{1,32}):");
+
+    // key - 表情代码，value - 对应的 Unicode 字符
+    private static final Map<String, String> EMOJIS = readEmojis();
+
+    // 嵌套块（引用、列表）和嵌套行内语法的最大深度，防止构造出的深层嵌套导致栈溢出
+    private static final int MAX_DEPTH = 16;
+
+    // 查找行内代码、强调、链接的结束标记时最多向后查找的字符数，避免大量未闭合的标记导致平方级的耗时
+    private static final int MAX_SPAN = 1000;
+
+    /**
+     * 渲染
+     * @param markdown 转义之后的 Markdown 文本
+     * @return HTML
+     */
+    public String render(String markdown) {
+        if (StringUtils.isBlank(markdown)) {
+            return "";
+        }
+        String normalized = markdown.replace("\r\n", "\n").replace('\r', '\n');
+        List<String> lines = new ArrayList<>();
+        for (String line : normalized.split("\n", -1)) {
+            lines.add(line.replace("\t", "    "));
+        }
+        StringBuilder sb = new StringBuilder(markdown.length() + markdown.length() / 4);
+        renderBlocks(lines, sb, 0);
+        return sb.toString();
+    }
+
+    private void renderBlocks(List<String> lines, StringBuilder sb, int depth) {
+        int i = 0;
+        while (i < lines.size()) {
+            String line = lines.get(i);
+            if (StringUtils.isBlank(line)) {
+                i++;
+                continue;
+            }
+
+            // 代码块
+            Matcher matcher = FENCE.matcher(line);
+            if (matcher.matches()) {
+                i = renderFence(lines, i, matcher.group(1), matcher.group(2), sb);
+                continue;
+            }
+
+            // 缩进的代码块
+            if (line.startsWith("    ")) {
+                sb.append("<pre><code>");
+                while (i < lines.size()) {
+                    if (lines.get(i).startsWith("    ")) {
+                        sb.append(lines.get(i), 4, lines.get(i).length()).append('\n');
+                        i++;
+                        continue;
+                    }
+                    // 空行之后还是缩进的行时，空行属于代码块
+                    int next = nextNonBlank(lines, i);
+                    if (next == i || next == lines.size() || !lines.get(next).startsWith("    ")) {
+                        break;
+                    }
+                    for (; i < next; i++) {
+                        sb.append('\n');
+                    }
+                }
+                sb.append("</code></pre>\n");
+                continue;
+            }
+
+            // 标题
+            matcher = HEADING.matcher(line);
+            if (matcher.matches()) {
+                int level = matcher.group(1).length();
+                sb.append("<h").append(level).append('>');
+                renderInline(StringUtils.defaultString(matcher.group(2)), sb);
+                sb.append("</h").append(level).append(">\n");
+                i++;
+                continue;
+            }
+
+            // 分隔线
+            if (HR.matcher(line).matches()) {
+                sb.append("<hr>\n");
+                i++;
+                continue;
+            }
+
+            // 引用
+            if (QUOTE.matcher(line).matches() && depth < MAX_DEPTH) {
+                List<String> inner = new ArrayList<>();
+                while (i < lines.size() && !StringUtils.isBlank(lines.get(i))) {
+                    Matcher quote = QUOTE.matcher(lines.get(i));
+                    inner.add(quote.matches() ? quote.group(1) : lines.get(i));
+                    i++;
+                }
+                sb.append("<blockquote>\n");
+                renderBlocks(inner, sb, depth + 1);
+                sb.append("</blockquote>\n");
+                continue;
+            }
+
+            // 列表
+            if ((BULLET_ITEM.matcher(line).matches() || ORDERED_ITEM.matcher(line).matches()) && depth < MAX_DEPTH) {
+                i = renderList(lines, i, sb, depth);
+                continue;
+            }
+
+            // 表格
+            if (i + 1 < lines.size() && line.indexOf('|') >= 0 && TABLE_DIVIDER.matcher(lines.get(i + 1)).matches()) {
+                i = renderTable(lines, i, sb);
+                continue;
+            }
+
+            // 段落：直到空行或者其他块开始
+            sb.append("<p>");
+            boolean first = true;
+            while (i < lines.size() && !StringUtils.isBlank(lines.get(i)) && (first || !startsBlock(lines, i))) {
+                if (!first) {
+                    sb.append("<br>\n");
+                }
+                renderInline(lines.get(i).trim(), sb);
+                first = false;
+                i++;
+            }
+            sb.append("</p>\n");
+        }
+    }
+
+    private boolean startsBlock(List<String> lines, int i) {
+        String line = lines.get(i);
+        return FENCE.matcher(line).matches()
+                || HEADING.matcher(line).matches()
+                || HR.matcher(line).matches()
+                || QUOTE.matcher(line).matches()
+                || BULLET_ITEM.matcher(line).matches()
+                || ORDERED_ITEM.matcher(line).matches()
+                || (i + 1 < lines.size() && line.indexOf('|') >= 0 && TABLE_DIVIDER.matcher(lines.get(i + 1)).matches());
+    }
+
+    private int nextNonBlank(List<String> lines, int i) {
+        while (i < lines.size() && StringUtils.isBlank(lines.get(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private int renderFence(List<String> lines, int i, String fence, String language, StringBuilder sb) {
+        sb.append("<pre><code");
+        if (StringUtils.isNotEmpty(language)) {
+            sb.append(" class=\"language-").append(language.toLowerCase(Locale.ROOT)).append('"');
+        }
+        sb.append('>');
+        i++;
+        while (i < lines.size()) {
+            String line = lines.get(i);
+            String trimmed = line.trim();
+            if (trimmed.startsWith(fence) && StringUtils.containsOnly(trimmed, fence.charAt(0))) {
+                i++;
+                break;
+            }
+            sb.append(line).append('\n');
+            i++;
+        }
+        sb.append("</code></pre>\n");
+        return i;
+    }
+
+    /**
+     * 列表：连续的同类列表项，列表项中缩进的行属于该列表项（可以包含嵌套的列表）
+     */
+    private int renderList(List<String> lines, int i, StringBuilder sb, int depth) {
+        boolean ordered = ORDERED_ITEM.matcher(lines.get(i)).matches();
+        Pattern itemPattern = ordered ? ORDERED_ITEM : BULLET_ITEM;
+        if (ordered) {
+            Matcher matcher = ORDERED_ITEM.matcher(lines.get(i));
+            matcher.matches();
+            int start = Integer.parseInt(matcher.group(2));
+            sb.append(start == 1 ? "<ol>\n" : "<ol start=\"" + start + "\">\n");
+        } else {
+            sb.append("<ul>\n");
+        }
+
+        while (i < lines.size()) {
+            Matcher matcher = itemPattern.matcher(lines.get(i));
+            if (!matcher.matches()) {
+                break;
+            }
+            List<String> item = new ArrayList<>();
+            item.add(matcher.group(ordered ? 3 : 2));
+            i++;
+            boolean loose = false;
+            // 列表项的后续行：缩进的行，或者紧跟着的普通行
+            while (i < lines.size()) {
+                String line = lines.get(i);
+                if (StringUtils.isBlank(line)) {
+                    if (i + 1 < lines.size() && lines.get(i + 1).startsWith("  ")) {
+                        item.add("");
+                        loose = true;
+                        i++;
+                        continue;
+                    }
+                    break;
+                }
+                if (line.startsWith("  ")) {
+                    item.add(line.substring(Math.min(indentOf(line), 4)));
+                    i++;
+                } else if (!startsBlock(lines, i) && !loose) {
+                    item.add(line.trim());
+                    i++;
+                } else {
+                    break;
+                }
+            }
+
+            sb.append("<li>");
+            item.set(0, renderTaskBox(item.get(0), sb));
+            if (item.size() == 1) {
+                renderInline(item.get(0), sb);
+            } else {
+                renderBlocks(item, sb, depth + 1);
+            }
+            sb.append("</li>\n");
+
+            // 列表项之间的空行
+            if (i < lines.size() && StringUtils.isBlank(lines.get(i)) && i + 1 < lines.size() && itemPattern.matcher(lines.get(i + 1)).matches()) {
+                i++;
+            }
+        }
+
+        sb.append(ordered ? "</ol>\n" : "</ul>\n");
+        return i;
+    }
+
+    /**
+     * 任务列表：[ ] 未完成，[x] 已完成
+     * @return 去掉任务标记之后的文字
+     */
+    private String renderTaskBox(String text, StringBuilder sb) {
+        if (text.startsWith("[ ] ") || text.startsWith("[x] ") || text.startsWith("[X] ")) {
+            sb.append("<input type=\"checkbox\" disabled");
+            if (text.charAt(1) != ' ') {
+                sb.append(" checked");
+            }
+            sb.append("> ");
+            return text.substring(4);
+        }
+        return text;
+    }
+
+    private int indentOf(String line) {
+        int indent = 0;
+        while (indent < line.length() && line.charAt(indent) == ' ') {
+            indent++;
+        }
+        return indent;
+    }
+
+    private int renderTable(List<String> lines, int i, StringBuilder sb) {
+        List<String> aligns = new ArrayList<>();
+        for (String cell : splitRow(lines.get(i + 1))) {
+            boolean left = cell.startsWith(":");
+            boolean right = cell.endsWith(":");
+            aligns.add(left && right ? "center" : right ? "right" : left ? "left" : null);
+        }
+
+        sb.append("<table>\n<thead>\n");
+        renderRow(splitRow(lines.get(i)), aligns, "th", sb);
+        sb.append("</thead>\n<tbody>\n");
+        i += 2;
+        while (i < lines.size() && !StringUtils.isBlank(lines.get(i)) && lines.get(i).indexOf('|') >= 0) {
+            renderRow(splitRow(lines.get(i)), aligns, "td", sb);
+            i++;
+        }
+        sb.append("</tbody>\n</table>\n");
+        return i;
+    }
+
+    private void renderRow(List<String> cells, List<String> aligns, String tag, StringBuilder sb) {
+        sb.append("<tr>");
+        for (int j = 0; j < aligns.size(); j++) {
+            sb.append('<').append(tag);
+            if (aligns.get(j) != null) {
+                sb.append(" style=\"text-align:").append(aligns.get(j)).append('"');
+            }
+            sb.append('>');
+            if (j < cells.size()) {
+                renderInline(cells.get(j), sb);
+            }
+            sb.append("</").append(tag).append('>');
+        }
+        sb.append("</tr>\n");
+    }
+
+    private List<String> splitRow(String line) {
+        String row = line.trim();
+        if (row.startsWith("|")) {
+            row = row.substring(1);
+        }
+        if (row.endsWith("|") && !row.endsWith("\\|")) {
+            row = row.substring(0, row.length() - 1);
+        }
+        List<String> cells = new ArrayList<>();
+        StringBuilder cell = new StringBuilder();
+        for (int i = 0; i < row.length(); i++) {
+            char c = row.charAt(i);
+            if (c == '\\' && i + 1 < row.length() && row.charAt(i + 1) == '|') {
+                cell.append('|');
+                i++;
+            } else if (c == '|') {
+                cells.add(cell.toString().trim());
+                cell.setLength(0);
+            } else {
+                cell.append(c);
+            }
+        }
+        cells.add(cell.toString().trim());
+        return cells;
+    }
+
+    private void renderInline(String text, StringBuilder sb) {
+        renderInline(text, sb, 0);
+    }
+
+    /**
+     * 行内语法
+     * @param text
+     * @param sb
+     * @param depth 嵌套深度
+     */
+    private void renderInline(String text, StringBuilder sb, int depth) {
+        Matcher autoLink = null;
+        int i = 0;
+        int length = text.length();
+        while (i < length) {
+            char c = text.charAt(i);
+
+            // 反斜杠转义
+            if (c == '\\' && i + 1 < length && "\\`*_{}[]()#+-.!|~".indexOf(text.charAt(i + 1)) >= 0) {
+                sb.append(text.charAt(i + 1));
+                i += 2;
+                continue;
+            }
+
+            // 行内代码
+            if (c == '`') {
+                int run = countRun(text, i, '`');
+                String ticks = text.substring(i, i + run);
+                int close = indexOf(text, ticks, i + run, i + run + MAX_SPAN);
+                if (close > 0) {
+                    sb.append("<code>").append(text, i + run, close).append("</code>");
+                    i = close + run;
+                } else {
+                    sb.append(ticks);
+                    i += run;
+                }
+                continue;
+            }
+
+            // 图片和链接
+            if ((c == '[' || (c == '!' && i + 1 < length && text.charAt(i + 1) == '[')) && depth < MAX_DEPTH) {
+                int next = renderLink(text, i, sb, depth);
+                if (next > i) {
+                    i = next;
+                    continue;
+                }
+            }
+
+            // 粗体、斜体、删除线
+            if ((c == '*' || c == '_' || c == '~') && depth < MAX_DEPTH) {
+                int next = renderEmphasis(text, i, sb, depth);
+                if (next > i) {
+                    i = next;
+                    continue;
+                }
+            }
+
+            // 表情
+            if (c == ':') {
+                int next = renderEmoji(text, i, sb);
+                if (next > i) {
+                    i = next;
+                    continue;
+                }
+            }
+
+            // 网址自动链接
+            if ((c == 'h' || c == 'H') && (i == 0 || !Character.isLetterOrDigit(text.charAt(i - 1)))) {
+                if (autoLink == null) {
+                    autoLink = AUTO_LINK.matcher(text);
+                }
+                autoLink.region(i, length);
+                if (autoLink.lookingAt()) {
+                    String url = autoLink.group();
+                    sb.append("<a href=\"").append(url).append("\" rel=\"nofollow\">").append(url).append("</a>");
+                    i += url.length();
+                    continue;
+                }
+            }
+
+            sb.append(c);
+            i++;
+        }
+    }
+
+    /**
+     * :表情代码:，不认识的代码按原样输出
+     * @return 处理之后的位置，不是表情时返回 start
+     */
+    private int renderEmoji(String text, int start, StringBuilder sb) {
+        Matcher matcher = EMOJI.matcher(text).region(start, Math.min(text.length(), start + 34));
+        if (!matcher.lookingAt()) {
+            return start;
+        }
+        String emoji = EMOJIS.get(matcher.group(1));
+        if (emoji == null) {
+            return start;
+        }
+        sb.append(emoji);
+        return matcher.end();
+    }
+
+    /**
+     * 读取 emoji.properties 中的表情代码
+     * @return
+     */
+    private static Map<String, String> readEmojis() {
+        Properties properties = new Properties();
+        try (InputStream is = MarkdownRenderer.class.getClassLoader().getResourceAsStream("emoji.properties")) {
+            if (is != null) {
+                properties.load(new InputStreamReader(is, StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+            logger.error("加载表情文件失败" + e.getMessage());
+        }
+        Map<String, String> emojis = new HashMap<>();
+        for (String name : properties.stringPropertyNames()) {
+            emojis.put(name, properties.getProperty(name));
+        }
+        return emojis;
+    }
+
+    private int countRun(String text, int i, char c) {
+        int run = 0;
+        while (i + run < text.length() && text.charAt(i + run) == c) {
+            run++;
+        }
+        return run;
+    }
+
+    /**
+     * [文字](地址) 或者 ![说明](地址)
+     * @return 处理之后的位置，不是链接时返回 start
+     */
+    private int renderLink(String text, int start, StringBuilder sb, int depth) {
+        boolean image = text.charAt(start) == '!';
+        int open = image ? start + 1 : start;
+        int close = findClosingBracket(text, open);
+        if (close < 0 || close + 1 >= text.length() || text.charAt(close + 1) != '(') {
+            return start;
+        }
+        int end = findClosingParen(text, close + 2);
+        if (end < 0) {
+            return start;
+        }
+        String label = text.substring(open + 1, close);
+        String target = text.substring(close + 2, end).trim();
+        // 地址后面可以有标题：(url "title")，只保留地址
+        int space = target.indexOf(' ');
+        if (space > 0) {
+            target = target.substring(0, space);
+        }
+        // 去掉地址中的转义符（如 \) ），还原 HTML 实体后检查，浏览器解析属性时同样会还原
+        target = HtmlUtils.htmlUnescape(ESCAPED_PUNCTUATION.matcher(target).replaceAll("$1"));
+
+        if (!SAFE_URL.matcher(target).matches()) {
+            // 不安全的地址只显示文字
+            renderInline(label, sb, depth + 1);
+            return end + 1;
+        }
+        target = HtmlUtils.htmlEscape(target);
+        if (image) {
+            sb.append("<img src=\"").append(target).append("\" alt=\"").append(label).append("\">");
+        } else {
+            sb.append("<a href=\"").append(target).append("\" rel=\"nofollow\">");
+            renderInline(label, sb, depth + 1);
+            sb.append("</a>");
+        }
+        return end + 1;
+    }
+
+    /**
+     * 链接地址结束的 )：地址中可以有成对的括号（如 https://en.wikipedia.org/wiki/Foo_(bar)），最多查找 MAX_SPAN 个字符
+     * @param text
+     * @param from 地址开始的位置（( 之后）
+     * @return 找不到时返回 -1
+     */
+    private int findClosingParen(String text, int from) {
+        int level = 0;
+        int limit = Math.min(text.length(), from + MAX_SPAN);
+        for (int i = from; i < limit; i++) {
+            char c = text.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '(') {
+                level++;
+            } else if (c == ')' && level-- == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 在 [from, limit) 范围内查找 str，不会扫描到 limit 之后
+     * @return 找不到时返回 -1
+     */
+    private static int indexOf(String text, String str, int from, int limit) {
+        int last = Math.min(limit, text.length() - str.length() + 1);
+        for (int i = from; i < last; i++) {
+            if (text.startsWith(str, i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int findClosingBracket(String text, int open) {
+        int level = 0;
+        int limit = Math.min(text.length(), open + MAX_SPAN);
+        for (int i = open; i < limit; i++) {
+            char c = text.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                level++;
+            } else if (c == ']' && --level == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * **粗体**、__粗体__、*斜体*、_斜体_、~~删除线~~
+     * @return 处理之后的位置，不是强调时返回 start
+     */
+    private int renderEmphasis(String text, int start, StringBuilder sb, int depth) {
+        char c = text.charAt(start);
+        int run = countRun(text, start, c);
+        // 单词中间的下划线不是斜体（如 user_name）
+        if (c == '_' && start > 0 && Character.isLetterOrDigit(text.charAt(start - 1))) {
+            return start;
+        }
+        String delimiter;
+        String tag;
+        if (c == '~') {
+            if (run != 2) {
+                return start;
+            }
+            delimiter = "~~";
+            tag = "del";
+        } else if (run >= 2) {
+            delimiter = text.substring(start, start + 2);
+            tag = "strong";
+        } else {
+            delimiter = text.substring(start, start + 1);
+            tag = "em";
+        }
+
+        int contentStart = start + delimiter.length();
+        // 开始标记后面不能是空白
+        if (contentStart >= text.length() || Character.isWhitespace(text.charAt(contentStart))) {
+            return start;
+        }
+        int limit = contentStart + MAX_SPAN;
+        int close = indexOf(text, delimiter, contentStart + 1, limit);
+        while (close > 0 && Character.isWhitespace(text.charAt(close - 1))) {
+            close = indexOf(text, delimiter, close + 1, limit);
+        }
+        if (close < 0) {
+            return start;
+        }
+        sb.append('<').append(tag).append('>');
+        renderInline(text.substring(contentStart, close), sb, depth + 1);
+        sb.append("</").append(tag).append('>');
+        return close + delimiter.length();
+    }
+}
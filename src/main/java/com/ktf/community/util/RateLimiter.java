@@ -0,0 +1,85 @@
+package com.ktf.community.util;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Collections;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 限流：先检查本地令牌桶，再检查 Redis 中的滑动窗口
+ * 本地令牌桶只在本节点内计数，被它拒绝的请求不需要访问 Redis（大量恶意请求时可以保护 Redis）
+ * Redis 滑动窗口在所有节点之间共享计数，用 Lua 脚本保证“清理过期记录、计数、记录本次请求”的原子性
+ * Redis 不可用时放行，限流不应该影响正常访问
+ */
+@Component
+public class RateLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(RateLimiter.class);
+
+    // 滑动窗口：zset 中的成员是每次请求，分数是请求时间（毫秒）
+    private static final RedisScript<Long> SLIDING_WINDOW_SCRIPT = new DefaultRedisScript<>(
+            "local now = tonumber(ARGV[1]) " +
+            "local window = tonumber(ARGV[2]) " +
+            "redis.call('ZREMRANGEBYSCORE', KEYS[1], 0, now - window) " +
+            "if redis.call('ZCARD', KEYS[1]) >= tonumber(ARGV[3]) then return 0 end " +
+            "redis.call('ZADD', KEYS[1], now, ARGV[4]) " +
+            "redis.call('PEXPIRE', KEYS[1], window) " +
+            "return 1", Long.class);
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+
+    // 本地最多保存多少个令牌桶
+    @Value("${community.rate-limit.local-max-keys}")
+    private int localMaxKeys;
+
+    // key - 限流对象，value - 本地令牌桶
+    private Cache<String, TokenBucket> localBuckets;
+
+    @PostConstruct
+    public void init() {
+        localBuckets = Caffeine.newBuilder()
+                .maximumSize(localMaxKeys)
+                .expireAfterAccess(10, TimeUnit.MINUTES)
+                .build();
+    }
+
+    /**
+     * 尝试通过限流
+     * @param key 限流对象（路由 + 用户/IP）
+     * @param permits 窗口内最多允许的请求数
+     * @param windowSeconds 窗口长度（秒）
+     * @return 超过限制时返回 false
+     */
+    public boolean tryAcquire(String key, int permits, int windowSeconds) {
+        String bucketKey = key + ":" + permits + "/" + windowSeconds;
+        TokenBucket bucket = localBuckets.get(bucketKey, k -> new TokenBucket(permits, windowSeconds));
+        if (!bucket.tryAcquire()) {
+            return false;
+        }
+
+        try {
+            long now = System.currentTimeMillis();
+            String member = now + "-" + ThreadLocalRandom.current().nextLong();
+            Long allowed = (Long) redisTemplate.execute(SLIDING_WINDOW_SCRIPT, RedisSerializer.string(), RedisSerializer.string(),
+                    Collections.singletonList(RedisKeyUtil.getRateLimitKey(key)),
+                    String.valueOf(now), String.valueOf(windowSeconds * 1000L), String.valueOf(permits), member);
+            return allowed == null || allowed == 1;
+        } catch (Exception e) {
+            logger.error("限流检查失败: " + e.getMessage());
+            return true;
+        }
+    }
+}
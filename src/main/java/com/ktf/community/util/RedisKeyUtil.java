@@ -18,7 +18,14 @@ public class RedisKeyUtil {
     private static final String PREFIX_USER = "user"; // 登录凭证
     private static final String PREFIX_UV = "uv"; // 独立访客
     private static final String PREFIX_DAU = "dau"; // 日活跃用户
+    private static final String PREFIX_PV = "pv"; // 页面访问次数
+    private static final String PREFIX_POST_VIEW = "view:post"; // 帖子访客
     private static final String PREFIX_POST = "post"; // 用于统计帖子分数
+    private static final String PREFIX_CHANNEL = "channel"; // 发布/订阅的频道
+    private static final String PREFIX_MAIL = "mail"; // 待发送的邮件
+    private static final String PREFIX_BLOOM = "bloom"; // 布隆过滤器
+    private static final String PREFIX_RATE_LIMIT = "ratelimit"; // 限流
+    private static final String PREFIX_SENSITIVE = "sensitive"; // 敏感词
 
     /**
      *  某个实体（帖子、评论、回复）的获赞
@@ -90,6 +97,25 @@ public class RedisKeyUtil {
         return PREFIX_TICKET + SPLIT + ticket;
     }
 
+    /**
+     * 已登出的签名凭证（签名凭证不存入 Redis，登出时记录在这里）
+     * zset(ticket, 凭证过期时间)，凭证过期后即可从中删除
+     * @return redis 中的 key
+     */
+    public static String getRevokedTicketKey() {
+        return PREFIX_TICKET + SPLIT + "revoked";
+    }
+
+    /**
+     * 某个用户签发过的登录凭证，重置密码时用于吊销该用户所有的凭证
+     * zset(ticket, 凭证过期时间)
+     * @param userId
+     * @return redis 中的 key
+     */
+    public static String getUserTicketsKey(int userId) {
+        return PREFIX_TICKET + SPLIT + "user" + SPLIT + userId;
+    }
+
     /**
      * 用户信息
      * @param userId
@@ -118,6 +144,24 @@ public class RedisKeyUtil {
         return PREFIX_UV + SPLIT + startDate + SPLIT + endDate;
     }
 
+    /**
+     * 周 UV 汇总
+     * @param weekStart 该周周一的日期
+     * @return redis 中的 key
+     */
+    public static String getUVWeekKey(String weekStart) {
+        return PREFIX_UV + SPLIT + "week" + SPLIT + weekStart;
+    }
+
+    /**
+     * 月 UV 汇总
+     * @param month 年月，如 2021-09
+     * @return redis 中的 key
+     */
+    public static String getUVMonthKey(String month) {
+        return PREFIX_UV + SPLIT + "month" + SPLIT + month;
+    }
+
     /**
      * 单日 DAU
      * @param date
@@ -137,6 +181,24 @@ public class RedisKeyUtil {
         return PREFIX_DAU + SPLIT + startDate + SPLIT + endDate;
     }
 
+    /**
+     * 周 DAU 汇总
+     * @param weekStart 该周周一的日期
+     * @return redis 中的 key
+     */
+    public static String getDAUWeekKey(String weekStart) {
+        return PREFIX_DAU + SPLIT + "week" + SPLIT + weekStart;
+    }
+
+    /**
+     * 月 DAU 汇总
+     * @param month 年月，如 2021-09
+     * @return redis 中的 key
+     */
+    public static String getDAUMonthKey(String month) {
+        return PREFIX_DAU + SPLIT + "month" + SPLIT + month;
+    }
+
     /**
      * 帖子分数
      * @return redis 中的 key
@@ -144,6 +206,135 @@ public class RedisKeyUtil {
     public static String  getPostScoreKey() {
         return PREFIX_POST + SPLIT + "score";
     }
+
+    /**
+     * 帖子详情
+     * @param postId
+     * @return redis 中的 key
+     */
+    public static String getPostDetailKey(int postId) {
+        return PREFIX_POST + SPLIT + "detail" + SPLIT + postId;
+    }
+
+    /**
+     * 登录状态失效的通知频道（登出、修改密码、用户信息变更时发布，各节点收到后清除本地缓存）
+     * 消息格式：ticket:凭证 或者 user:用户id（同时清除本地的登录凭证缓存和用户缓存）
+     * @return redis 中的频道名
+     */
+    public static String getLoginInvalidateChannel() {
+        return PREFIX_CHANNEL + SPLIT + "login" + SPLIT + "invalidate";
+    }
+
+    /**
+     * 待发送的邮件队列（list）
+     * @return redis 中的 key
+     */
+    public static String getMailOutboxKey() {
+        return PREFIX_MAIL + SPLIT + "outbox";
+    }
+
+    /**
+     * 正在发送的邮件（list），发送成功或放入重试集合后才删除，进程退出时不会丢失
+     * @return redis 中的 key
+     */
+    public static String getMailProcessingKey() {
+        return PREFIX_MAIL + SPLIT + "processing";
+    }
+
+    /**
+     * 等待重试的邮件（zset，分数为下次发送的时间）
+     * @return redis 中的 key
+     */
+    public static String getMailRetryKey() {
+        return PREFIX_MAIL + SPLIT + "retry";
+    }
+
+    /**
+     * 某一天各个路由的访问次数（hash，field 为路由）
+     * @param date
+     * @return redis 中的 key
+     */
+    public static String getPageViewKey(String date) {
+        return PREFIX_PV + SPLIT + date;
+    }
+
+    /**
+     * 某个帖子某一天的访客（HyperLogLog）
+     * @param postId
+     * @param date
+     * @return redis 中的 key
+     */
+    public static String getPostViewKey(int postId, String date) {
+        return PREFIX_POST_VIEW + SPLIT + postId + SPLIT + date;
+    }
+
+    /**
+     * 已被使用的用户名和邮箱的布隆过滤器（bitmap）
+     * 位数和哈希函数个数不同的过滤器不能混用，所以放在 key 中：修改配置后使用新的 key 重建，滚动发布时新旧配置的节点各用各的
+     * @param numBits bitmap 的位数
+     * @param numHashes 哈希函数的个数
+     * @return redis 中的 key
+     */
+    public static String getUserBloomKey(long numBits, int numHashes) {
+        return PREFIX_BLOOM + SPLIT + "user" + SPLIT + numBits + SPLIT + numHashes;
+    }
+
+    /**
+     * 所有节点正在使用的用户布隆过滤器的 key（set），注册新用户时写入其中每一个过滤器
+     * @return redis 中的 key
+     */
+    public static String getUserBloomKeysKey() {
+        return PREFIX_BLOOM + SPLIT + "user" + SPLIT + "keys";
+    }
+
+    /**
+     * 用户布隆过滤器写入失败的次数（string），存在时过滤器可能不完整，一律退回到查询数据库，重建完成后删除
+     * @return redis 中的 key
+     */
+    public static String getUserBloomDirtyKey() {
+        return PREFIX_BLOOM + SPLIT + "user" + SPLIT + "dirty";
+    }
+
+    /**
+     * 某个限流对象的请求记录（zset，滑动窗口）
+     * @param key 路由 + 用户/IP
+     * @return redis 中的 key
+     */
+    public static String getRateLimitKey(String key) {
+        return PREFIX_RATE_LIMIT + SPLIT + key;
+    }
+
+    /**
+     * 敏感词词库（set）
+     * @return redis 中的 key
+     */
+    public static String getSensitiveWordsKey() {
+        return PREFIX_SENSITIVE + SPLIT + "words";
+    }
+
+    /**
+     * 敏感词词库的版本号，每次修改词库时加一
+     * @return redis 中的 key
+     */
+    public static String getSensitiveVersionKey() {
+        return PREFIX_SENSITIVE + SPLIT + "version";
+    }
+
+    /**
+     * 敏感词词库更新的通知频道
+     * @return
+     */
+    public static String getSensitiveReloadChannel() {
+        return PREFIX_CHANNEL + SPLIT + "sensitive" + SPLIT + "reload";
+    }
+
+    /**
+     * 帖子信息变更的通知频道
+     * @return
+     */
+    public static String getPostInvalidateChannel() {
+        return PREFIX_CHANNEL + SPLIT + "post" + SPLIT + "invalidate";
+    }
 }
 
 
@@ -0,0 +1,173 @@
+package com.ktf.community.util;
+
+import com.ktf.community.entity.User;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 请求内并行查询使用的线程池（帖子详情页同时查询作者、点赞、评论等）
+ *
+ * 线程数和队列长度都有上限，队列满时由请求线程自己执行，退化为串行查询而不是报错
+ * 提交任务时把当前登录用户（HostHolder）传递给执行任务的线程，任务结束后恢复该线程原来的用户
+ */
+@Component
+public class RequestExecutor implements Executor {
+
+    @Autowired
+    private HostHolder hostHolder;
+
+    // 线程数
+    @Value("${community.request-executor.threads}")
+    private int threads;
+
+    // 等待执行的任务最多多少个
+    @Value("${community.request-executor.queue-capacity}")
+    private int queueCapacity;
+
+    // 等待查询结果的最长时间（毫秒）
+    @Value("${community.request-executor.timeout-ms}")
+    private long timeoutMs;
+
+    private ThreadPoolExecutor pool;
+
+    // 提交的任务数量
+    private final LongAdder submitted = new LongAdder();
+
+    // 执行完的任务数量
+    private final LongAdder completed = new LongAdder();
+
+    // 队列已满、在请求线程中执行的任务数量
+    private final LongAdder callerRuns = new LongAdder();
+
+    // 等待结果超时的次数
+    private final LongAdder timeouts = new LongAdder();
+
+    // 任务在队列中等待的总时间和最长时间（纳秒）
+    private final LongAdder waitNanos = new LongAdder();
+
+    private final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0);
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger index = new AtomicInteger();
+        pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread thread = new Thread(r, "request-executor-" + index.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (r, executor) -> {
+                    callerRuns.increment();
+                    if (!executor.isShutdown()) {
+                        r.run();
+                    }
+                });
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        pool.shutdownNow();
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        User user = hostHolder.getUser();
+        long submitTime = System.nanoTime();
+        submitted.increment();
+        pool.execute(() -> {
+            long wait = System.nanoTime() - submitTime;
+            waitNanos.add(wait);
+            maxWaitNanos.accumulate(wait);
+            // 可能在请求线程中执行（队列已满），结束后要恢复原来的用户
+            User previous = hostHolder.getUser();
+            hostHolder.setUsers(user);
+            try {
+                command.run();
+            } finally {
+                if (previous == null) {
+                    hostHolder.clear();
+                } else {
+                    hostHolder.setUsers(previous);
+                }
+                completed.increment();
+            }
+        });
+    }
+
+    /**
+     * 在线程池中执行查询
+     * @param supplier
+     * @param <T>
+     * @return
+     */
+    public <T> CompletableFuture<T> supply(Supplier<T> supplier) {
+        return CompletableFuture.supplyAsync(supplier, this);
+    }
+
+    /**
+     * 等待查询结果，查询抛出的异常原样抛出
+     * @param future
+     * @param <T>
+     * @return
+     */
+    public <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            timeouts.increment();
+            throw new IllegalStateException("查询超时（" + timeoutMs + "ms）", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待查询结果时被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * 线程池的统计信息
+     * @return
+     */
+    public Map<String, Object> getStats() {
+        long done = completed.sum();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("threads", threads);
+        stats.put("poolSize", pool.getPoolSize());
+        stats.put("active", pool.getActiveCount());
+        stats.put("queueSize", pool.getQueue().size());
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("submitted", submitted.sum());
+        stats.put("completed", done);
+        stats.put("callerRuns", callerRuns.sum());
+        stats.put("timeouts", timeouts.sum());
+        stats.put("avgWaitMicros", done == 0 ? 0 : waitNanos.sum() / done / 1000);
+        stats.put("maxWaitMicros", maxWaitNanos.get() / 1000);
+        return stats;
+    }
+}
@@ -5,78 +5,216 @@ import org.apache.commons.lang3.CharUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.util.HashMap;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 敏感词过滤器
+ * 使用 Aho-Corasick 自动机：匹配失败时沿失败指针跳转，不需要回退文本指针，过滤时间与文本长度成线性关系
+ *
+ * 词库存放在 Redis 的 set 中，所有节点共用，修改后版本号加一并通过发布/订阅通知所有节点
+ * 各节点在后台线程中构建新的自动机，构建完成后替换引用，过滤时不会被阻塞；通知丢失时由定时检查版本号补上
+ * 启动时先用 sensitive-words.txt 构建，Redis 中还没有词库时用它初始化
  */
 @Component
-public class SensitiveFilter {
+public class SensitiveFilter implements MessageListener {
 
     private static final Logger logger = LoggerFactory.getLogger(SensitiveFilter.class);
 
     // 将敏感词替换成 ***
     private static final String REPLACEMENT = "***";
 
-    // 根节点
-    private TrieNode rootNode = new TrieNode();
+    // sanitize 复用的缓冲区超过这个容量（字符数）后不再保留
+    private static final int MAX_BUFFER_CAPACITY = 64 * 1024;
+
+    // sanitize 使用的缓冲区，每个线程一个
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(1024));
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    // 定时检查词库版本号的间隔（秒）
+    @Value("${community.sensitive.check-interval-seconds}")
+    private int checkIntervalSeconds;
+
+    // 敏感词自动机（构建完成后不再修改，更新词库时整体替换）
+    private volatile Automaton automaton = Automaton.build(new ArrayList<>());
+
+    // 当前自动机对应的词库版本号，0 表示使用的是 sensitive-words.txt
+    private volatile long version;
+
+    // 构建自动机的线程（只有一个，多次更新按顺序处理）
+    private ScheduledExecutorService reloader;
 
     /**
-     * 初始化前缀树
+     * 用 sensitive-words.txt 初始化自动机，然后在后台加载 Redis 中的词库，并订阅词库更新的通知
      */
     @PostConstruct // 初始化方法
     public void init() {
-        try (
-            InputStream is = this.getClass().getClassLoader().getResourceAsStream("sensitive-words.txt");
-            BufferedReader reader = new BufferedReader(new InputStreamReader(is));
-        ) {
-            String keyword;
-            while ((keyword = reader.readLine()) != null) {
-                // 添加到前缀树
-                this.addKeyword(keyword);
-            }
-        } catch (IOException e) {
-            logger.error("加载敏感词文件失败" + e.getMessage());
+        setWords(readDefaultWords());
+
+        reloader = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "sensitive-reloader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(RedisKeyUtil.getSensitiveReloadChannel()));
+        reloader.scheduleWithFixedDelay(this::reload, 0, checkIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        reloader.shutdownNow();
+    }
+
+    /**
+     * 收到词库更新的通知，在后台重新构建自动机
+     * @param message 新的版本号
+     * @param pattern
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Object body = redisTemplate.getValueSerializer().deserialize(message.getBody());
+        if (body != null && Long.parseLong(body.toString()) > version) {
+            reloader.execute(this::reload);
         }
+    }
 
+    /**
+     * 添加敏感词
+     * @param words
+     */
+    public void addWords(Collection<String> words) {
+        if (!words.isEmpty()) {
+            redisTemplate.opsForSet().add(RedisKeyUtil.getSensitiveWordsKey(), words.toArray());
+            publish();
+        }
+    }
+
+    /**
+     * 删除敏感词
+     * @param words
+     */
+    public void removeWords(Collection<String> words) {
+        if (!words.isEmpty()) {
+            redisTemplate.opsForSet().remove(RedisKeyUtil.getSensitiveWordsKey(), words.toArray());
+            publish();
+        }
+    }
+
+    /**
+     * 当前词库的版本号和敏感词数量
+     * @return
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new TreeMap<>();
+        stats.put("version", version);
+        stats.put("keywords", automaton.keywordCount);
+        stats.put("nodes", automaton.fail.length);
+        return stats;
+    }
 
+    /**
+     * 词库的版本号加一，并通知所有节点
+     */
+    private void publish() {
+        Long newVersion = redisTemplate.opsForValue().increment(RedisKeyUtil.getSensitiveVersionKey());
+        redisTemplate.convertAndSend(RedisKeyUtil.getSensitiveReloadChannel(), newVersion);
     }
 
     /**
-     * 将一个敏感词添加进前缀树中
-     * @param keyword
+     * 版本号有变化时，读取 Redis 中的词库构建新的自动机并替换
+     * 在 reloader 线程中执行
      */
-    private void addKeyword(String keyword) {
-        TrieNode tempNode = rootNode;
-        for (int i = 0; i < keyword.length(); i ++) {
-            char c = keyword.charAt(i);
-            TrieNode subNode = tempNode.getSubNode(c);// 首先判断是否存在相同子节点
-
-            if (subNode == null) {
-                subNode = new TrieNode(); // 初始化子节点
-                tempNode.addSubNode(c, subNode); // 添加子节点
+    private void reload() {
+        try {
+            String wordsKey = RedisKeyUtil.getSensitiveWordsKey();
+            String versionKey = RedisKeyUtil.getSensitiveVersionKey();
+            // 第一个启动的节点用 sensitive-words.txt 初始化词库（版本号存在说明已经初始化过，词库为空时 set 会被 Redis 删除）
+            if (Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(versionKey, 0))) {
+                addWords(readDefaultWords());
+                return;
+            }
+
+            Object current = redisTemplate.opsForValue().get(versionKey);
+            long newVersion = current == null ? 0 : Long.parseLong(current.toString());
+            if (newVersion <= version) {
+                return;
             }
+            Set<Object> members = redisTemplate.opsForSet().members(wordsKey);
+            List<String> words = new ArrayList<>(members.size());
+            for (Object member : members) {
+                words.add(member.toString());
+            }
+            // 先读版本号再读词库，读到的词库不会比版本号旧
+            setWords(words);
+            version = newVersion;
+            logger.info("敏感词词库已更新，版本: " + newVersion + "，敏感词数量: " + words.size());
+        } catch (Exception e) {
+            logger.error("加载敏感词词库失败: " + e.getMessage());
+        }
+    }
 
-            // 指向子节点，进入下一层循环
-            tempNode = subNode;
+    /**
+     * 用给定的敏感词构建新的自动机并替换当前的自动机（基准测试中不依赖 Redis 直接调用）
+     * @param words
+     */
+    void setWords(Collection<String> words) {
+        automaton = Automaton.build(words);
+    }
 
-            // 设置结束标识（叶子节点），表示这个字符是该敏感词的最后一个字符
-            if (i == keyword.length() - 1) {
-                tempNode.setKeywordEnd(true);
+    /**
+     * 读取 sensitive-words.txt 中的敏感词
+     * @return
+     */
+    List<String> readDefaultWords() {
+        List<String> keywords = new ArrayList<>();
+        try (
+            InputStream is = this.getClass().getClassLoader().getResourceAsStream("sensitive-words.txt");
+            BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
+        ) {
+            String keyword;
+            while ((keyword = reader.readLine()) != null) {
+                if (StringUtils.isNotBlank(keyword)) {
+                    keywords.add(keyword.trim());
+                }
             }
+        } catch (IOException e) {
+            logger.error("加载敏感词文件失败" + e.getMessage());
         }
+        return keywords;
     }
 
     /**
      * 过滤敏感词
+     * 从左到右扫描一遍文本，从最左边的起始位置开始替换（同一位置开始的多个敏感词取最长的），替换的敏感词之间不重叠
      * @param text 待过滤的文本
      * @return 过滤后的文本（即用 *** 替代敏感词）
      */
@@ -84,94 +222,293 @@ public class SensitiveFilter {
         if (StringUtils.isBlank(text)) {
             return null;
         }
+        StringBuilder sb = new StringBuilder(text.length());
+        process(text, sb, false);
+        return sb.toString();
+    }
+
+    /**
+     * 转义 HTML 标记并过滤敏感词（用户提交的帖子、评论、私信）
+     * 在原文上匹配敏感词，一边扫描一边把转义后的结果写入当前线程复用的缓冲区，不产生中间字符串
+     * 结果可以直接输出到页面（th:utext），显示时不需要反转义
+     * @param text 用户提交的文本
+     * @return 转义、过滤后的文本
+     */
+    public String sanitize(String text) {
+        if (StringUtils.isBlank(text)) {
+            return null;
+        }
+        StringBuilder sb = BUFFER.get();
+        sb.setLength(0);
+        process(text, sb, true);
+        String result = sb.toString();
+        // 不保留过大的缓冲区
+        if (sb.capacity() > MAX_BUFFER_CAPACITY) {
+            BUFFER.remove();
+        }
+        return result;
+    }
+
+    /**
+     * 扫描文本，将过滤后的结果写入 sb
+     * 与原来的前缀树过滤器一样从最左边的起始位置开始替换，替换的敏感词之间不重叠；
+     * 同一起始位置有多个敏感词时替换最长的一个（前缀树过滤器替换最先匹配到的最短的一个，如 {ab, abcd} 会把 abcd 替换成 ***cd）
+     * 前缀树过滤器在文本末尾匹配失败时直接输出剩余的文本（如 {abcd, bc} 中的 abc 不会被替换），这里会继续匹配
+     * 与前缀树过滤器的对比见 SensitiveFilterTest
+     *
+     * 自动机只扫描一遍文本，不因替换而回退：记录每个起始位置上最长的敏感词，
+     * 等到之后匹配到的敏感词不可能从该位置或更靠左的位置开始时，再确定是否替换
+     * @param text
+     * @param sb
+     * @param escape 是否转义 HTML 标记
+     */
+    private void process(String text, StringBuilder sb, boolean escape) {
+        Automaton automaton = this.automaton;
+        int window = automaton.maxDepth + 1;
 
-        // 指针 1：前缀树的工作指针
-        TrieNode tempNode = rootNode;
-        // 指针 2：指向文本中某个敏感词的第一位
-        int begin = 0;
-        // 指针 3；指向文本中某个敏感词的最后一位
-        int end = 0;
+        // 已经写入结果的位置
+        int emitted = 0;
+        // 自动机的当前状态
+        int state = 0;
+        // 下面的序号都是读入自动机的字符的序号（跳过的符号不计入）
+        // 读入的字符数
+        int count = 0;
+        // 最近读入的字符在文本中的位置（环形数组）
+        int[] positions = new int[window];
+        // 从某个字符开始的最长敏感词在哪个字符结束（环形数组，-1 表示没有）
+        int[] longest = new int[window];
+        // 下一个待确定的起始字符，之前的字符都已经替换或者确定不需要替换
+        int next = 0;
 
-        // 记录过滤后的文本（结果）
-        StringBuilder sb = new StringBuilder();
+        // i == text.length() 时文本已经结束，确定剩余的起始字符
+        for (int i = 0; i <= text.length(); i++) {
+            // 之后匹配到的敏感词不会从该字符之前开始
+            int bound;
+            if (i < text.length()) {
+                char c = text.charAt(i);
+                // 跳过符号（防止敏感词混合符号，比如 ☆赌☆博）
+                if (isSymbol(c)) {
+                    continue;
+                }
 
-        while (end < text.length()) {
-            char c = text.charAt(end);
-            // 跳过符号（防止敏感词混合符号，比如 ☆赌☆博）
-            if (isSymbol(c)) {
-                // 若指针 1 处于根节点，则将此符号计入结果（直接忽略），让指针 2 向下走一步
-                if (tempNode == rootNode) {
-                    sb.append(c);
-                    begin ++;
+                state = automaton.next(state, c);
+                positions[count % window] = i;
+                longest[count % window] = -1;
+                // 在当前字符结束的所有敏感词（沿字典后缀指针），同一起始字符后结束的更长
+                int node = automaton.isEnd(state) ? state : automaton.dictLink[state];
+                while (node != 0) {
+                    int begin = count - automaton.depth[node] + 1;
+                    if (begin >= next) {
+                        longest[begin % window] = count;
+                    }
+                    node = automaton.dictLink[node];
                 }
-                // 无论符号在开头还是在中间，指针 3 都会向下走一步
-                end ++;
-                continue;
+                bound = count - automaton.depth[state] + 1;
+                count++;
+            } else {
+                bound = count;
             }
 
-            // 检查子节点
-            tempNode = tempNode.getSubNode(c);
-            if (tempNode == null) {
-                // 以指针 begin 开头的字符串不是敏感词
-                sb.append(text.charAt(begin));
-                // 进入下一位的判断
-                begin ++;
-                end = begin;
-                // 指针 1 重新指向根节点
-                tempNode = rootNode;
-            }
-            else if (tempNode.isKeywordEnd()) {
-                // 发现敏感词，将 begin~end 的字符串替换掉
+            while (next < bound) {
+                int end = longest[next % window];
+                if (end < 0) {
+                    next++;
+                    continue;
+                }
+                // 将敏感词的第一个字符到最后一个字符（包括中间的符号）替换掉
+                append(sb, text, emitted, positions[next % window], escape);
                 sb.append(REPLACEMENT);
-                // 进入下一位的判断
-                end ++;
-                begin = end;
-                // 指针 1 重新指向根节点
-                tempNode = rootNode;
-            }
-            else {
-                // 检查下一个字符
-                end ++;
+                emitted = positions[end % window] + 1;
+                // 与该敏感词重叠的敏感词不再替换
+                next = end + 1;
             }
         }
 
-        // 将最后一批字符计入结果（如果最后一次循环的字符串不是敏感词，上述的循环逻辑不会将其加入最终结果）
-        sb.append(text.substring(begin));
+        // 将剩余的字符计入结果
+        append(sb, text, emitted, text.length(), escape);
+    }
 
-        return sb.toString();
+    private void append(StringBuilder sb, String text, int start, int end, boolean escape) {
+        if (!escape) {
+            sb.append(text, start, end);
+            return;
+        }
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&':
+                    sb.append("&amp;");
+                    break;
+                case '<':
+                    sb.append("&lt;");
+                    break;
+                case '>':
+                    sb.append("&gt;");
+                    break;
+                case '"':
+                    sb.append("&quot;");
+                    break;
+                case '\'':
+                    sb.append("&#39;");
+                    break;
+                default:
+                    sb.append(c);
+                    break;
+            }
+        }
     }
 
     // 判断某个字符是否是符号
-    private boolean isSymbol(Character c) {
+    private boolean isSymbol(char c) {
         // 0x2E80~0x9FFF 是东亚文字范围
         return !CharUtils.isAsciiAlphanumeric(c) && (c < 0x2E80 || c > 0x9FFF);
     }
 
     /**
-     * 定义前缀树
+     * Aho-Corasick 自动机
+     * 节点用 int 编号（0 是根节点），每个节点的转移是按字符排序的 char 数组和对应的目标节点数组，查找时二分
      */
-    private class TrieNode {
-        // 关键词结束标识（叶子节点）
-        private boolean isKeywordEnd = false;
-        // 子节点(key:子节点字符, value:子节点类型)
-        private Map<Character, TrieNode> subNodes = new HashMap<>();
+    private static class Automaton {
+
+        // 每个节点的转移字符（升序）
+        private final char[][] labels;
+        // 每个节点的转移目标，与 labels 一一对应
+        private final int[][] targets;
+        // 失败指针：当前节点匹配的字符串的最长真后缀所在的节点
+        private final int[] fail;
+        // 节点的深度（从根节点到该节点的字符数）
+        private final int[] depth;
+        // 在该节点结束的最长敏感词的长度，0 表示没有敏感词在该节点结束
+        private final int[] output;
+        // 字典后缀指针：沿失败指针找到的第一个有敏感词结束的节点，0 表示没有
+        private final int[] dictLink;
+        // 最大深度
+        private final int maxDepth;
+        // 敏感词数量
+        private final int keywordCount;
+
+        private Automaton(char[][] labels, int[][] targets, int[] fail, int[] depth, int[] output, int[] dictLink,
+                          int maxDepth, int keywordCount) {
+            this.labels = labels;
+            this.targets = targets;
+            this.fail = fail;
+            this.depth = depth;
+            this.output = output;
+            this.dictLink = dictLink;
+            this.maxDepth = maxDepth;
+            this.keywordCount = keywordCount;
+        }
 
-        public boolean isKeywordEnd() {
-            return isKeywordEnd;
+        /**
+         * 读入一个字符后的状态：当前节点没有该字符的转移时，沿失败指针回退
+         * @param state
+         * @param c
+         * @return
+         */
+        int next(int state, char c) {
+            while (true) {
+                int target = child(state, c);
+                if (target >= 0) {
+                    return target;
+                }
+                if (state == 0) {
+                    return 0;
+                }
+                state = fail[state];
+            }
         }
 
-        public void setKeywordEnd(boolean keywordEnd) {
-            isKeywordEnd = keywordEnd;
+        /**
+         * 是否有敏感词在该节点结束
+         * @param state
+         * @return
+         */
+        boolean isEnd(int state) {
+            return state != 0 && output[state] == depth[state];
         }
 
-        // 添加子节点
-        public void addSubNode(Character c, TrieNode node) {
-            subNodes.put(c, node);
+        private int child(int state, char c) {
+            int index = Arrays.binarySearch(labels[state], c);
+            return index >= 0 ? targets[state][index] : -1;
         }
 
-        // 获取子节点
-        public TrieNode getSubNode(Character c) {
-            return subNodes.get(c);
+        /**
+         * 构建自动机：先构建前缀树，再按层（广度优先）计算失败指针和输出
+         * @param keywords
+         * @return
+         */
+        static Automaton build(Collection<String> keywords) {
+            // 构建前缀树（构建时使用 TreeMap，构建完成后转换成数组）
+            List<TreeMap<Character, Integer>> children = new ArrayList<>();
+            List<Integer> depths = new ArrayList<>();
+            List<Boolean> ends = new ArrayList<>();
+            children.add(new TreeMap<>());
+            depths.add(0);
+            ends.add(false);
+            for (String keyword : keywords) {
+                if (StringUtils.isBlank(keyword)) {
+                    continue;
+                }
+                int node = 0;
+                for (int i = 0; i < keyword.length(); i++) {
+                    Integer next = children.get(node).get(keyword.charAt(i));
+                    if (next == null) {
+                        next = children.size();
+                        children.add(new TreeMap<>());
+                        depths.add(depths.get(node) + 1);
+                        ends.add(false);
+                        children.get(node).put(keyword.charAt(i), next);
+                    }
+                    node = next;
+                }
+                ends.set(node, true);
+            }
+
+            int size = children.size();
+            char[][] labels = new char[size][];
+            int[][] targets = new int[size][];
+            int[] depth = new int[size];
+            int maxDepth = 0;
+            int keywordCount = 0;
+            for (int node = 0; node < size; node++) {
+                TreeMap<Character, Integer> map = children.get(node);
+                labels[node] = new char[map.size()];
+                targets[node] = new int[map.size()];
+                int index = 0;
+                for (Map.Entry<Character, Integer> entry : map.entrySet()) {
+                    labels[node][index] = entry.getKey();
+                    targets[node][index] = entry.getValue();
+                    index++;
+                }
+                depth[node] = depths.get(node);
+                maxDepth = Math.max(maxDepth, depth[node]);
+                if (ends.get(node)) {
+                    keywordCount++;
+                }
+            }
+
+            int[] fail = new int[size];
+            int[] output = new int[size];
+            int[] dictLink = new int[size];
+            Automaton automaton = new Automaton(labels, targets, fail, depth, output, dictLink, maxDepth, keywordCount);
+
+            // 广度优先：父节点的失败指针一定先于子节点计算
+            int[] queue = new int[size];
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = 0;
+            while (head < tail) {
+                int node = queue[head++];
+                // 在该节点结束的敏感词，以及在其后缀上结束的敏感词中最长的一个
+                output[node] = ends.get(node) ? depth[node] : output[fail[node]];
+                dictLink[node] = node == 0 ? 0 : (ends.get(fail[node]) ? fail[node] : dictLink[fail[node]]);
+                for (int i = 0; i < labels[node].length; i++) {
+                    int child = targets[node][i];
+                    fail[child] = node == 0 ? 0 : automaton.next(fail[node], labels[node][i]);
+                    queue[tail++] = child;
+                }
+            }
+            return automaton;
         }
     }
 
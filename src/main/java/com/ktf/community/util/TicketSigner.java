@@ -0,0 +1,126 @@
+package com.ktf.community.util;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 自包含的登录凭证（使用 HMAC 签名）
+ * 格式：密钥版本.用户id.过期时间(毫秒).随机串.签名
+ * 凭证本身携带了用户 id 和过期时间，验证时只需要本地计算签名，不需要访问 Redis
+ * 密钥带有版本号，轮换密钥时旧版本的密钥保留到旧凭证全部过期即可
+ */
+@Component
+public class TicketSigner {
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private static final String SPLIT = ".";
+
+    // 是否使用签名凭证（关闭时使用原来存放在 Redis 中的随机凭证）
+    @Value("${community.ticket.hmac.enabled}")
+    private boolean enabled;
+
+    // 签名密钥，格式：版本:密钥,版本:密钥
+    @Value("${community.ticket.hmac.keys}")
+    private String keysConfig;
+
+    // 签发新凭证时使用的密钥版本
+    @Value("${community.ticket.hmac.current-version}")
+    private String currentVersion;
+
+    // key - 密钥版本，value - 密钥
+    private Map<String, byte[]> keys = new HashMap<>();
+
+    /**
+     * 解析配置的密钥
+     */
+    @PostConstruct
+    public void init() {
+        for (String item : StringUtils.split(keysConfig, ',')) {
+            String[] pair = item.trim().split(":", 2);
+            if (pair.length == 2) {
+                keys.put(pair[0], pair[1].getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        if (enabled && !keys.containsKey(currentVersion)) {
+            throw new IllegalStateException("未配置当前版本的凭证签名密钥: " + currentVersion);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 判断凭证是否是签名凭证（随机凭证中不包含 "."）
+     * @param ticket
+     * @return
+     */
+    public boolean isSigned(String ticket) {
+        return ticket != null && ticket.contains(SPLIT);
+    }
+
+    /**
+     * 签发凭证
+     * @param userId
+     * @param expired 过期时间（毫秒）
+     * @return
+     */
+    public String sign(int userId, long expired) {
+        String payload = currentVersion + SPLIT + userId + SPLIT + expired + SPLIT + CommunityUtil.generateUUID().substring(0, 8);
+        return payload + SPLIT + hmac(keys.get(currentVersion), payload);
+    }
+
+    /**
+     * 验证凭证的签名和过期时间
+     * @param ticket
+     * @return 验证通过返回 [用户id, 过期时间]，否则返回 null
+     */
+    public long[] verify(String ticket) {
+        String[] parts = StringUtils.split(ticket, SPLIT);
+        if (parts == null || parts.length != 5) {
+            return null;
+        }
+        byte[] key = keys.get(parts[0]);
+        if (key == null) {
+            return null;
+        }
+        String payload = ticket.substring(0, ticket.lastIndexOf(SPLIT));
+        byte[] expected = hmac(key, payload).getBytes(StandardCharsets.UTF_8);
+        if (!MessageDigest.isEqual(expected, parts[4].getBytes(StandardCharsets.UTF_8))) {
+            return null;
+        }
+        try {
+            long userId = Long.parseLong(parts[1]);
+            long expired = Long.parseLong(parts[2]);
+            if (expired <= System.currentTimeMillis()) {
+                return null;
+            }
+            return new long[] {userId, expired};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private String hmac(byte[] key, String payload) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(new SecretKeySpec(key, ALGORITHM));
+            byte[] sign = mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(sign);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("计算凭证签名失败", e);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.ktf.community.util;
+
+/**
+ * 令牌桶：每 seconds 秒补充 permits 个令牌（匀速补充），最多存放 permits 个
+ */
+public class TokenBucket {
+
+    private final int capacity;
+
+    // 每纳秒补充的令牌数
+    private final double refillPerNano;
+
+    private double tokens;
+
+    private long lastRefill = System.nanoTime();
+
+    public TokenBucket(int permits, int seconds) {
+        this.capacity = permits;
+        this.refillPerNano = permits / (seconds * 1e9);
+        this.tokens = permits;
+    }
+
+    /**
+     * 尝试取出一个令牌
+     * @return 没有令牌时返回 false
+     */
+    public synchronized boolean tryAcquire() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * refillPerNano);
+        lastRefill = now;
+        if (tokens < 1) {
+            return false;
+        }
+        tokens--;
+        return true;
+    }
+}
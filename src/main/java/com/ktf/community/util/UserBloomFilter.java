@@ -0,0 +1,332 @@
+package com.ktf.community.util;
+
+import com.ktf.community.dao.UserMapper;
+import com.ktf.community.entity.User;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 已被使用的用户名和邮箱的布隆过滤器（存放在 Redis 的 bitmap 中，所有节点共用）
+ * 判断为不存在时一定不存在，可以不查询数据库；判断为存在时再查询数据库确认
+ * 只用于注册时检查用户名、邮箱是否可用，登录、重置密码等查询用户的地方始终查询数据库
+ *
+ * 过滤器不完整时会误判为不存在，所以：
+ * 1. 重建时先写入临时 key，完成后再改名，改名之后再补上重建期间注册的用户
+ * 2. 过滤器的 key 不存在时（未建好、被删除），一律判断为存在，退回到查询数据库
+ * 3. key 中包含位数和哈希函数个数，修改配置后不会按新的位置去查旧的 bitmap，而是重建一个新的过滤器；
+ *    滚动发布时新旧配置的过滤器同时存在，注册新用户时写入所有节点登记过的过滤器，旧配置的节点也不会误判
+ * 4. 写入失败时记录到 Redis 中（记录也失败时先记在本地，之后再补记），在下次重建之前一律判断为存在
+ * 5. 定时任务每天重建一次，管理员也可以手动重建，不经过注册写入的用户（如直接插入数据库）在重建后加入
+ */
+@Component
+public class UserBloomFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserBloomFilter.class);
+
+    // 重建时每批读取的用户数量
+    private static final int REBUILD_BATCH_SIZE = 1000;
+
+    // Redis 的 bitmap 最多 2^32 位
+    private static final long MAX_BITS = 1L << 32;
+
+    // 写入失败的次数没有变化时才删除（重建期间又有写入失败时保留）
+    private static final RedisScript<Long> CLEAR_DIRTY_SCRIPT = new DefaultRedisScript<>(
+            "local v = redis.call('GET', KEYS[1]) " +
+            "if (v or '') == ARGV[1] then redis.call('DEL', KEYS[1]) return 1 end " +
+            "return 0", Long.class);
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+
+    @Autowired
+    private UserMapper userMapper;
+
+    // 预计的用户数量
+    @Value("${community.bloom.user.expected-insertions}")
+    private long expectedInsertions;
+
+    // 期望的误判率
+    @Value("${community.bloom.user.fpp}")
+    private double fpp;
+
+    // bitmap 的位数
+    private long numBits;
+
+    // 每个元素对应的位数（哈希函数的个数）
+    private int numHashes;
+
+    // 过滤器在 Redis 中的 key（与位数、哈希函数个数对应）
+    private String key;
+
+    // 写入失败、而且没能记录到 Redis 中
+    private volatile boolean dirty;
+
+    /**
+     * 计算过滤器的大小，过滤器不存在时在后台重建
+     */
+    @PostConstruct
+    public void init() {
+        numBits = (long) Math.ceil(-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        numBits = Math.min(Math.max(numBits, 64), MAX_BITS);
+        numHashes = Math.max(1, (int) Math.round((double) numBits / expectedInsertions * Math.log(2)));
+        key = RedisKeyUtil.getUserBloomKey(numBits, numHashes);
+
+        // 登记本节点使用的过滤器，其他配置的节点注册用户时也会写入
+        try {
+            redisTemplate.opsForSet().add(RedisKeyUtil.getUserBloomKeysKey(), key);
+        } catch (Exception e) {
+            logger.error("登记布隆过滤器失败: " + e.getMessage());
+        }
+
+        Thread thread = new Thread(this::rebuildIfAbsent, "user-bloom-rebuild");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 用户名是否可能已被使用
+     * @param username
+     * @return false 表示一定没有被使用
+     */
+    public boolean mightContainUsername(String username) {
+        return mightContain("name:" + normalize(username));
+    }
+
+    /**
+     * 邮箱是否可能已被使用
+     * @param email
+     * @return false 表示一定没有被使用
+     */
+    public boolean mightContainEmail(String email) {
+        return mightContain("email:" + normalize(email));
+    }
+
+    /**
+     * 记录新注册用户的用户名和邮箱（需要在用户写入数据库之后调用）
+     * 写入所有登记过的过滤器（按各自的位数和哈希函数个数），还没建好的过滤器跳过，由重建完成后的补充扫描加入
+     * @param user
+     */
+    public void put(User user) {
+        List<String> elements = toElements(user);
+        try {
+            Set<Object> keys = redisTemplate.opsForSet().members(RedisKeyUtil.getUserBloomKeysKey());
+            if (keys == null || keys.isEmpty()) {
+                keys = Collections.singleton(key);
+            }
+            for (Object member : keys) {
+                String bloomKey = member.toString();
+                // key 的最后两段是位数和哈希函数个数
+                String[] parts = bloomKey.split(":");
+                if (parts.length < 2 || !Boolean.TRUE.equals(redisTemplate.hasKey(bloomKey))) {
+                    continue;
+                }
+                putAll(bloomKey, elements, Long.parseLong(parts[parts.length - 2]), Integer.parseInt(parts[parts.length - 1]));
+            }
+        } catch (Exception e) {
+            logger.error("更新布隆过滤器失败: " + e.getMessage());
+            dirty = true;
+            markDirty();
+        }
+    }
+
+    /**
+     * 重建过滤器（定时任务、管理员手动触发）：写入临时 key 后替换原来的过滤器，重建期间原来的过滤器照常使用
+     * 重建完成后，如果期间没有新的写入失败，清除写入失败的记录
+     */
+    public void rebuild() {
+        String dirtyKey = RedisKeyUtil.getUserBloomDirtyKey();
+        byte[] rawDirtyKey = dirtyKey.getBytes(StandardCharsets.UTF_8);
+        byte[] dirtyCount = (byte[]) redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.get(rawDirtyKey));
+        String tempKey = key + ":" + CommunityUtil.generateUUID();
+        int lastId;
+        try {
+            redisTemplate.opsForValue().setBit(tempKey, numBits - 1, false);
+            lastId = fill(tempKey, 0);
+            redisTemplate.rename(tempKey, key);
+        } catch (RuntimeException e) {
+            redisTemplate.delete(tempKey);
+            throw e;
+        }
+        // 补上重建期间注册的用户
+        fill(key, lastId);
+        redisTemplate.execute(CLEAR_DIRTY_SCRIPT, RedisSerializer.string(), RedisSerializer.string(),
+                Collections.singletonList(dirtyKey), dirtyCount == null ? "" : new String(dirtyCount, StandardCharsets.UTF_8));
+        logger.info("布隆过滤器重建完成，key: " + key + "，位数: " + numBits + "，哈希函数个数: " + numHashes);
+    }
+
+    /**
+     * 记录一次写入失败，所有节点在下次重建之前都不再使用过滤器
+     * @return 是否记录成功
+     */
+    private boolean markDirty() {
+        byte[] rawDirtyKey = RedisKeyUtil.getUserBloomDirtyKey().getBytes(StandardCharsets.UTF_8);
+        try {
+            redisTemplate.execute((RedisCallback<Long>) connection -> connection.incr(rawDirtyKey));
+            dirty = false;
+            return true;
+        } catch (Exception e) {
+            logger.error("记录布隆过滤器写入失败: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean mightContain(String element) {
+        // 本地记下的写入失败还没有记录到 Redis 中
+        if (dirty && !markDirty()) {
+            return true;
+        }
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        byte[] rawDirtyKey = RedisKeyUtil.getUserBloomDirtyKey().getBytes(StandardCharsets.UTF_8);
+        long[] offsets = offsets(element, numBits, numHashes);
+        try {
+            List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                connection.exists(rawKey);
+                connection.exists(rawDirtyKey);
+                for (long offset : offsets) {
+                    connection.getBit(rawKey, offset);
+                }
+                return null;
+            });
+            // 过滤器不存在或者可能不完整，无法判断
+            if (!Boolean.TRUE.equals(results.get(0)) || Boolean.TRUE.equals(results.get(1))) {
+                return true;
+            }
+            for (int i = 2; i < results.size(); i++) {
+                if (!Boolean.TRUE.equals(results.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (Exception e) {
+            logger.error("查询布隆过滤器失败: " + e.getMessage());
+            return true;
+        }
+    }
+
+    /**
+     * 过滤器不存在时，从数据库中重建
+     */
+    private void rebuildIfAbsent() {
+        try {
+            if (Boolean.TRUE.equals(redisTemplate.hasKey(key))) {
+                return;
+            }
+            String tempKey = key + ":" + CommunityUtil.generateUUID();
+            // 先分配好整个 bitmap，同时保证没有用户时 key 也存在
+            redisTemplate.opsForValue().setBit(tempKey, numBits - 1, false);
+            int lastId = fill(tempKey, 0);
+            if (!Boolean.TRUE.equals(redisTemplate.renameIfAbsent(tempKey, key))) {
+                // 其他节点已经建好
+                redisTemplate.delete(tempKey);
+                return;
+            }
+            // 补上重建期间注册的用户
+            fill(key, lastId);
+            logger.info("布隆过滤器重建完成，key: " + key + "，位数: " + numBits + "，哈希函数个数: " + numHashes);
+        } catch (Exception e) {
+            logger.error("重建布隆过滤器失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 将 id 大于 afterId 的用户分批写入过滤器
+     * @param key
+     * @param afterId
+     * @return 写入的最后一个用户的 id
+     */
+    private int fill(String key, int afterId) {
+        List<User> users = userMapper.selectIdentities(afterId, REBUILD_BATCH_SIZE);
+        while (!users.isEmpty()) {
+            List<String> elements = new ArrayList<>();
+            for (User user : users) {
+                elements.addAll(toElements(user));
+            }
+            putAll(key, elements, numBits, numHashes);
+            afterId = users.get(users.size() - 1).getId();
+            users = userMapper.selectIdentities(afterId, REBUILD_BATCH_SIZE);
+        }
+        return afterId;
+    }
+
+    private void putAll(String key, List<String> elements, long numBits, int numHashes) {
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String element : elements) {
+                for (long offset : offsets(element, numBits, numHashes)) {
+                    connection.setBit(rawKey, offset, true);
+                }
+            }
+            return null;
+        });
+    }
+
+    private List<String> toElements(User user) {
+        List<String> elements = new ArrayList<>(2);
+        elements.add("name:" + normalize(user.getUsername()));
+        if (StringUtils.isNotBlank(user.getEmail())) {
+            elements.add("email:" + normalize(user.getEmail()));
+        }
+        return elements;
+    }
+
+    /**
+     * 与 MySQL 默认排序规则的比较方式保持一致：忽略大小写、重音符号和末尾空格
+     * 否则数据库认为相同的两个值在过滤器中会被判断为不同，导致误判为不存在
+     * @param value
+     * @return
+     */
+    private String normalize(String value) {
+        if (value == null) {
+            return "";
+        }
+        String stripped = Normalizer.normalize(StringUtils.stripEnd(value, " "), Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+        return stripped.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 计算元素在 bitmap 中对应的位置（使用 MD5 的两个 64 位值做双重哈希）
+     * @param element
+     * @param numBits 过滤器的位数
+     * @param numHashes 过滤器的哈希函数个数
+     * @return
+     */
+    private static long[] offsets(String element, long numBits, int numHashes) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("MD5").digest(element.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        long h1 = 0;
+        long h2 = 0;
+        for (int i = 0; i < 8; i++) {
+            h1 = (h1 << 8) | (digest[i] & 0xff);
+            h2 = (h2 << 8) | (digest[i + 8] & 0xff);
+        }
+        long[] offsets = new long[numHashes];
+        for (int i = 0; i < numHashes; i++) {
+            offsets[i] = Math.floorMod(h1 + i * h2, numBits);
+        }
+        return offsets;
+    }
+}
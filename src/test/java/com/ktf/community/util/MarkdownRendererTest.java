@@ -0,0 +1,201 @@
+package com.ktf.community.util;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * MarkdownRenderer 的输出直接用 th:utext 显示，这里覆盖转义、链接和图片地址的白名单、嵌套和查找长度的限制、代码块
+ * 输入与发帖时一样先经过 SensitiveFilter.sanitize 转义
+ */
+public class MarkdownRendererTest {
+
+    private final MarkdownRenderer renderer = new MarkdownRenderer();
+
+    private final SensitiveFilter sensitiveFilter = new SensitiveFilter();
+
+    private String render(String markdown) {
+        sensitiveFilter.setWords(Collections.emptyList());
+        return renderer.render(sensitiveFilter.sanitize(markdown));
+    }
+
+    // 转义
+
+    @Test
+    public void escapesHtmlInText() {
+        String html = render("<script>alert(1)</script> <img src=x onerror=alert(1)>");
+        assertFalse(html.contains("<script"));
+        assertFalse(html.contains("<img"));
+        assertTrue(html.contains("&lt;script&gt;alert(1)&lt;/script&gt;"));
+    }
+
+    @Test
+    public void escapesHtmlInHeadingsTablesAndLists() {
+        String html = render("# <b>x</b>\n\n| <i>a</i> | b |\n| --- | --- |\n| <u>c</u> | d |\n\n- <s>e</s>");
+        assertFalse(html.contains("<b>"));
+        assertFalse(html.contains("<i>"));
+        assertFalse(html.contains("<u>"));
+        assertFalse(html.contains("<s>"));
+    }
+
+    @Test
+    public void escapedCharactersAreLiteral() {
+        assertEquals("<p>*a* [b](c)</p>\n", render("\\*a\\* \\[b\\](c)"));
+    }
+
+    // 链接和图片地址的白名单
+
+    @Test
+    public void rendersSafeLinks() {
+        assertEquals("<p><a href=\"https://example.com/?a=1&amp;b=2\" rel=\"nofollow\">a</a></p>\n",
+                render("[a](https://example.com/?a=1&b=2)"));
+        assertEquals("<p><a href=\"/discuss/detail/1\" rel=\"nofollow\">a</a></p>\n", render("[a](/discuss/detail/1)"));
+        assertEquals("<p><a href=\"mailto:a@example.com\" rel=\"nofollow\">a</a></p>\n", render("[a](mailto:a@example.com)"));
+        assertEquals("<p><img src=\"https://example.com/a.png\" alt=\"a\"></p>\n", render("![a](https://example.com/a.png)"));
+    }
+
+    @Test
+    public void linkTargetMayContainParentheses() {
+        assertEquals("<p><a href=\"https://en.wikipedia.org/wiki/Foo_(bar)\" rel=\"nofollow\">a</a></p>\n",
+                render("[a](https://en.wikipedia.org/wiki/Foo_(bar))"));
+        assertEquals("<p><a href=\"https://example.com/a)\" rel=\"nofollow\">a</a></p>\n",
+                render("[a](https://example.com/a\\))"));
+    }
+
+    @Test
+    public void dropsScriptAndDataUrls() {
+        assertEquals("<p>a</p>\n", render("[a](javascript:alert(1))"));
+        assertEquals("<p>a</p>\n", render("[a](JaVaScRiPt:alert(1))"));
+        assertEquals("<p>a</p>\n", render("[a](vbscript:msgbox(1))"));
+        assertEquals("<p>a</p>\n", render("[a](data:text/html;base64,PHNjcmlwdD4=)"));
+        assertEquals("<p>a</p>\n", render("![a](data:image/svg+xml;base64,PHN2Zz4=)"));
+    }
+
+    @Test
+    public void entityEncodedSchemeStaysText() {
+        // 经过 sanitize 后 & 被转义，浏览器解析出的是字面上的 &#58;，只是一个站内相对地址
+        String html = render("[a](javascript&#58;alert(1))");
+        assertEquals("<p><a href=\"javascript&amp;#58;alert(1)\" rel=\"nofollow\">a</a></p>\n", html);
+    }
+
+    @Test
+    public void entityEncodedSchemeIsRejectedWithoutSanitize() {
+        // 即使输入没有经过转义，实体还原之后的地址也要通过白名单
+        assertEquals("<p>a</p>\n", renderer.render("[a](javascript&#58;alert(1))"));
+        assertEquals("<p>a</p>\n", renderer.render("[a](&#x6A;avascript&#x3A;alert(1))"));
+        assertEquals("<p>a</p>\n", renderer.render("[a](java&#x09;script:alert(1))"));
+        assertEquals("<p>a</p>\n", renderer.render("[a](java&#0;script:alert(1))"));
+        assertEquals("<p>a</p>\n", renderer.render("![a](data&#58;image/png;base64,AAAA)"));
+        // 不认识的实体原样保留，重新转义后浏览器看到的是字面上的 &colon;
+        assertEquals("<p><a href=\"javascript&amp;colon;alert(1)\" rel=\"nofollow\">a</a></p>\n",
+                renderer.render("[a](javascript&colon;alert(1))"));
+    }
+
+    @Test
+    public void cannotBreakOutOfAttributes() {
+        String html = render("[a](https://example.com/\"onmouseover=\"alert(1))");
+        assertFalse(html.contains("onmouseover=\""));
+        html = render("![a\" onerror=\"alert(1)](https://example.com/a.png)");
+        assertFalse(html.contains("\" onerror=\""));
+        assertTrue(html.contains("alt=\"a&quot; onerror=&quot;alert(1)\""));
+    }
+
+    @Test
+    public void autoLinksStopAtPunctuation() {
+        assertEquals("<p>见 <a href=\"https://example.com/a\" rel=\"nofollow\">https://example.com/a</a>。</p>\n",
+                render("见 https://example.com/a。"));
+        assertEquals("<p><a href=\"https://example.com/a\" rel=\"nofollow\">https://example.com/a</a>&quot;x</p>\n",
+                render("https://example.com/a\"x"));
+    }
+
+    // 嵌套和查找长度的限制
+
+    @Test(timeout = 5000)
+    public void deepBlockNestingDoesNotOverflow() {
+        StringBuilder quotes = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            quotes.append('>');
+        }
+        String html = render(quotes + " a");
+        assertTrue(html.startsWith("<blockquote>"));
+
+        StringBuilder lists = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            lists.append(repeat("  ", i)).append("- a\n");
+        }
+        render(lists.toString());
+    }
+
+    @Test(timeout = 5000)
+    public void deepInlineNestingDoesNotOverflow() {
+        render(repeat("[", 20000) + "a" + repeat("](b)", 20000));
+        render(repeat("**_~~", 20000) + "a" + repeat("~~_**", 20000));
+    }
+
+    @Test(timeout = 5000)
+    public void unclosedMarkersDoNotTakeQuadraticTime() {
+        render(repeat("[a](", 20000));
+        render(repeat("[a", 20000));
+        render(repeat("`", 1) + repeat("a ", 50000));
+        render(repeat("*a ", 30000));
+        render(repeat("~~a ", 30000));
+        render(repeat("``a", 20000));
+    }
+
+    @Test
+    public void emphasisIsLimitedToMaxSpan() {
+        String far = "*" + repeat("a", 2000) + "*";
+        assertFalse(render(far).contains("<em>"));
+        assertEquals("<p><em>a</em> <strong>b</strong> <del>c</del></p>\n", render("*a* **b** ~~c~~"));
+    }
+
+    // 代码块
+
+    @Test
+    public void fencedCodeIsEscapedAndNotParsed() {
+        assertEquals("<pre><code class=\"language-java\">**a** &lt;b&gt; [c](javascript:d)\n</code></pre>\n",
+                render("```java\n**a** <b> [c](javascript:d)\n```"));
+    }
+
+    @Test
+    public void unclosedFenceRunsToTheEnd() {
+        assertEquals("<pre><code>a\n\nb\n</code></pre>\n", render("~~~\na\n\nb"));
+    }
+
+    @Test
+    public void indentedCodeKeepsBlankLines() {
+        assertEquals("<pre><code>a\n\nb\n</code></pre>\n", render("    a\n\n    b"));
+    }
+
+    @Test
+    public void inlineCodeIsNotParsed() {
+        assertEquals("<p><code>*a* :smile: &lt;b&gt;</code></p>\n", render("`*a* :smile: <b>`"));
+        assertEquals("<p><code>a`b</code></p>\n", render("``a`b``"));
+    }
+
+    // editor.md 的任务列表和表情
+
+    @Test
+    public void rendersTaskLists() {
+        assertEquals("<ul>\n<li><input type=\"checkbox\" disabled> a</li>\n<li><input type=\"checkbox\" disabled checked> b</li>\n</ul>\n",
+                render("- [ ] a\n- [x] b"));
+    }
+
+    @Test
+    public void rendersKnownEmojis() {
+        assertEquals("<p>😄 👍 :not_an_emoji:</p>\n", render(":smile: :+1: :not_an_emoji:"));
+        assertEquals("<p>10:30:00</p>\n", render("10:30:00"));
+    }
+
+    private static String repeat(String s, int times) {
+        StringBuilder sb = new StringBuilder(s.length() * times);
+        for (int i = 0; i < times; i++) {
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,168 @@
+package com.ktf.community.util;
+
+import org.apache.commons.lang3.CharUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Aho-Corasick 自动机与原来的前缀树过滤器对比
+ * 参照实现是原来的前缀树逐个起始位置匹配的写法，只有两处按设计不同：
+ * 1. 同一起始位置有多个敏感词时替换最长的一个（原来替换最先匹配到的最短的一个，{ab, abcd} 会把 abcd 替换成 ***cd）
+ * 2. 文本末尾未完成的匹配失败后，从下一个位置继续匹配（原来直接输出剩余的文本，{abcd, bc} 中的 abc 不会被替换）
+ */
+public class SensitiveFilterTest {
+
+    private static final String REPLACEMENT = "***";
+
+    private final SensitiveFilter filter = new SensitiveFilter();
+
+    private String filter(String text, String... words) {
+        filter.setWords(Arrays.asList(words));
+        return filter.filter(text);
+    }
+
+    @Test
+    public void blankInputReturnsNull() {
+        assertNull(filter("", "ab"));
+        assertNull(filter("  ", "ab"));
+    }
+
+    @Test
+    public void overlappingWordsReplaceTheLeftmost() {
+        assertEquals("***d", filter("abcd", "abc", "bcd"));
+        assertEquals("a***", filter("abcd", "bcd", "cd"));
+        assertEquals("***", filter("abcd", "abcd", "bc"));
+        assertEquals("*********", filter("ababab", "ab", "ba"));
+    }
+
+    @Test
+    public void nestedPrefixesReplaceTheLongest() {
+        assertEquals("***", filter("abcd", "ab", "abcd"));
+        assertEquals("***ce", filter("abce", "ab", "abcd"));
+        assertEquals("aaaaa***", filter("aaaaaaab", "aab"));
+        assertEquals("x***y", filter("xabcy", "a", "ab", "abc"));
+    }
+
+    @Test
+    public void symbolsAreSkippedInsideMatches() {
+        assertEquals("***", filter("a☆b", "ab"));
+        assertEquals("☆***☆", filter("☆ab☆", "ab"));
+        assertEquals("***", filter("赌☆☆博", "赌博"));
+        assertEquals("a☆c", filter("a☆c", "ab"));
+        assertEquals("*** ***", filter("a b a b", "ab"));
+    }
+
+    @Test
+    public void matchesAtTheEndOfInput() {
+        assertEquals("x***", filter("xab", "ab"));
+        assertEquals("xa", filter("xa", "ab"));
+        assertEquals("a***", filter("abc", "abcd", "bc"));
+        assertEquals("a***☆", filter("abc☆", "abcd", "bc"));
+        assertEquals("ab***", filter("abc", "abcd", "c"));
+    }
+
+    @Test
+    public void sanitizeEscapesAndFilters() {
+        filter.setWords(Collections.singletonList("ab"));
+        assertEquals("&lt;***&gt; &amp; &quot;&#39;", filter.sanitize("<ab> & \"'"));
+        assertEquals("&lt;***&gt;", filter.sanitize("<a<b>"));
+    }
+
+    @Test
+    public void matchesTheTrieWalkOnRandomInput() {
+        Random random = new Random(20211009);
+        char[] letters = {'a', 'b', 'c', '中'};
+        char[] textChars = {'a', 'b', 'c', '中', '☆', ' ', '*'};
+        for (int round = 0; round < 50000; round++) {
+            List<String> words = new ArrayList<>();
+            int wordCount = random.nextInt(6);
+            for (int i = 0; i < wordCount; i++) {
+                words.add(randomString(random, letters, 1 + random.nextInt(4)));
+            }
+            String text = randomString(random, textChars, random.nextInt(30));
+
+            filter.setWords(words);
+            assertEquals("words: " + words + ", text: " + text, trieWalk(words, text), filter.filter(text));
+        }
+    }
+
+    private static String randomString(Random random, char[] chars, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(chars[random.nextInt(chars.length)]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 原来的前缀树过滤器（按类注释中的两处不同修改）
+     */
+    private static String trieWalk(List<String> words, String text) {
+        if (StringUtils.isBlank(text)) {
+            return null;
+        }
+        TrieNode root = new TrieNode();
+        for (String word : words) {
+            TrieNode node = root;
+            for (char c : word.toCharArray()) {
+                node = node.subNodes.computeIfAbsent(c, k -> new TrieNode());
+            }
+            node.keywordEnd = true;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        int begin = 0;
+        while (begin < text.length()) {
+            char c = text.charAt(begin);
+            if (isSymbol(c) || !root.subNodes.containsKey(c)) {
+                sb.append(c);
+                begin++;
+                continue;
+            }
+            // 从 begin 开始沿前缀树向下走，记录最长的敏感词的结束位置
+            TrieNode node = root;
+            int longest = -1;
+            for (int end = begin; end < text.length() && node != null; end++) {
+                char ch = text.charAt(end);
+                if (isSymbol(ch)) {
+                    continue;
+                }
+                node = node.subNodes.get(ch);
+                if (node != null && node.keywordEnd) {
+                    longest = end;
+                }
+            }
+            if (longest < 0) {
+                sb.append(c);
+                begin++;
+            } else {
+                sb.append(REPLACEMENT);
+                begin = longest + 1;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean isSymbol(char c) {
+        // 0x2E80~0x9FFF 是东亚文字范围
+        return !CharUtils.isAsciiAlphanumeric(c) && (c < 0x2E80 || c > 0x9FFF);
+    }
+
+    private static class TrieNode {
+
+        private boolean keywordEnd;
+
+        private final Map<Character, TrieNode> subNodes = new HashMap<>();
+    }
+}